@@ -0,0 +1,54 @@
+package se.urmo.wolf.bench;
+
+import se.urmo.wolf.world.GameMap;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic maps for benchmarks: a grid of rooms separated by one-tile walls,
+ * each wall segment pierced by a door, with a sprinkling of pillars; or long parallel corridors.
+ */
+public final class BenchMaps {
+    private BenchMaps() {}
+
+    public static GameMap rooms(int w, int h, int room, long seed) {
+        Random rnd = new Random(seed);
+        int[][] grid = new int[h][w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                boolean border = x == 0 || y == 0 || x == w - 1 || y == h - 1;
+                boolean wall = x % room == 0 || y % room == 0;
+                grid[y][x] = border || wall ? 1 : 0;
+            }
+        }
+        // One door per wall segment, halfway along it
+        for (int y = room; y < h - 1; y += room) {
+            for (int x = room / 2; x < w - 1; x += room) grid[y][x] = 2;
+        }
+        for (int x = room; x < w - 1; x += room) {
+            for (int y = room / 2; y < h - 1; y += room) grid[y][x] = 2;
+        }
+        for (int i = 0; i < w * h / 64; i++) {
+            int x = 2 + rnd.nextInt(Math.max(1, w - 4)), y = 2 + rnd.nextInt(Math.max(1, h - 4));
+            if (grid[y][x] == 0 && grid[y][x - 1] == 0 && grid[y][x + 1] == 0
+                    && grid[y - 1][x] == 0 && grid[y + 1][x] == 0) grid[y][x] = 1;
+        }
+        return new GameMap(w, h, grid);
+    }
+
+    /**
+     * East-west corridors of the given width running the length of the map, separated by one-tile
+     * walls with an opening at each end. Looking down one, nearly every column hits a long wall face.
+     */
+    public static GameMap corridors(int w, int h, int width) {
+        int[][] grid = new int[h][w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                boolean border = x == 0 || y == 0 || x == w - 1 || y == h - 1;
+                boolean wall = y % (width + 1) == 0 && x > 1 && x < w - 2;
+                grid[y][x] = border || wall ? 1 : 0;
+            }
+        }
+        return new GameMap(w, h, grid);
+    }
+}
@@ -0,0 +1,98 @@
+package se.urmo.wolf.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.urmo.wolf.world.GameMap;
+import se.urmo.wolf.world.MapData;
+import se.urmo.wolf.world.MapLoader;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tile queries, door animation and line-of-sight marching. "map1" is the shipped level; the
+ * synthetic sizes are room grids with a door in every wall segment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameMapBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"map1", "256", "1024"})
+    public String map;
+
+    private GameMap gameMap;
+    private final int[] qx = new int[QUERIES], qy = new int[QUERIES];
+    private final double[] ax = new double[QUERIES], ay = new double[QUERIES];
+    private final double[] bx = new double[QUERIES], by = new double[QUERIES];
+
+    @Setup
+    public void setup() {
+        if (map.equals("map1")) {
+            MapData data = MapLoader.load("maps/map1.txt");
+            gameMap = data.map;
+        } else {
+            int n = Integer.parseInt(map);
+            gameMap = BenchMaps.rooms(n, n, 8, 7);
+        }
+        Random rnd = new Random(1);
+        for (int i = 0; i < QUERIES; i++) {
+            qx[i] = rnd.nextInt(gameMap.w);
+            qy[i] = rnd.nextInt(gameMap.h);
+            // LOS segments of up to 8 tiles, the enemy view distance
+            ax[i] = 1 + rnd.nextDouble() * (gameMap.w - 2);
+            ay[i] = 1 + rnd.nextDouble() * (gameMap.h - 2);
+            double a = rnd.nextDouble() * Math.PI * 2, len = rnd.nextDouble() * 8;
+            bx[i] = Math.max(0, Math.min(gameMap.w - 1e-3, ax[i] + Math.cos(a) * len));
+            by[i] = Math.max(0, Math.min(gameMap.h - 1e-3, ay[i] + Math.sin(a) * len));
+        }
+        // Half the doors open, so isSolid sees every door state
+        for (int y = 0; y < gameMap.h; y++) {
+            for (int x = 0; x < gameMap.w; x++) {
+                if (gameMap.isDoor(x, y) && ((x + y) & 1) == 0) gameMap.openDoor(x, y);
+            }
+        }
+        gameMap.updateDoors(1.0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void at(Blackhole bh) {
+        for (int i = 0; i < QUERIES; i++) bh.consume(gameMap.at(qx[i], qy[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void isSolid(Blackhole bh) {
+        for (int i = 0; i < QUERIES; i++) bh.consume(gameMap.isSolid(qx[i], qy[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void hasLineOfSight(Blackhole bh) {
+        for (int i = 0; i < QUERIES; i++) bh.consume(gameMap.hasLineOfSight(ax[i], ay[i], bx[i], by[i]));
+    }
+
+    /** One fixed tick with a few doors mid-animation, as in play. */
+    @Benchmark
+    public GameMap updateDoors() {
+        gameMap.openDoor(qx[0], qy[0]);
+        gameMap.updateDoors(1.0 / 60.0);
+        return gameMap;
+    }
+}
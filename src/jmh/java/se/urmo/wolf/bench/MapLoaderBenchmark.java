@@ -0,0 +1,71 @@
+package se.urmo.wolf.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urmo.wolf.world.MapData;
+import se.urmo.wolf.world.MapLoader;
+import se.urmo.wolf.world.Pvs;
+import se.urmo.wolf.world.WmapFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class MapLoaderBenchmark {
+    private Path map1Wmap, roomsWmap;
+    private MapData map1;
+
+    @Setup
+    public void setup() throws IOException {
+        map1Wmap = Files.createTempFile("map1", WmapFile.EXTENSION);
+        map1 = MapLoader.loadText("maps/map1.txt");
+        WmapFile.write(map1Wmap, map1);
+        // 4096x4096 is past the PVS build budget, so it gets none and this times the load itself
+        roomsWmap = Files.createTempFile("rooms4096", WmapFile.EXTENSION);
+        WmapFile.write(roomsWmap, new MapData(BenchMaps.rooms(4096, 4096, 16, 1), 1.5, 1.5));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(map1Wmap);
+        Files.deleteIfExists(roomsWmap);
+    }
+
+    /** After the first call these reuse the cached PVS, as a respawn does. */
+    @Benchmark
+    public MapData loadMap1() {
+        return MapLoader.load("maps/map1.txt");
+    }
+
+    @Benchmark
+    public MapData loadMap1Wmap() {
+        return MapLoader.load(map1Wmap.toString());
+    }
+
+    @Benchmark
+    public MapData loadRooms4096Wmap() {
+        return MapLoader.load(roomsWmap.toString());
+    }
+
+    /** What the first load of map1 adds on top of parsing. */
+    @Benchmark
+    public Pvs buildPvsMap1() {
+        return Pvs.build(map1.map);
+    }
+}
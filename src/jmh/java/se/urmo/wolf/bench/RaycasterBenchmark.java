@@ -0,0 +1,81 @@
+package se.urmo.wolf.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urmo.wolf.Game;
+import se.urmo.wolf.entities.Guard;
+import se.urmo.wolf.entities.Player;
+import se.urmo.wolf.entities.SpriteEntity;
+import se.urmo.wolf.gfx.Assets;
+import se.urmo.wolf.render.Raycaster;
+import se.urmo.wolf.world.CameraPath;
+import se.urmo.wolf.world.MapData;
+import se.urmo.wolf.world.MapLoader;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** One full frame per invocation, the camera advancing along the scripted walk through map1. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RaycasterBenchmark {
+    @Param({"320x200", "800x600", "1920x1080"})
+    public String resolution;
+
+    @Param({"0", "32", "256"})
+    public int sprites;
+
+    private MapData data;
+    private Player player;
+    private List<SpriteEntity> entities;
+    private CameraPath path;
+    private Raycaster raycaster;
+    private BufferedImage fb;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        Assets.init();
+        data = MapLoader.load("maps/map1.txt");
+        player = new Player(data.playerStartX, data.playerStartY, data.map);
+        path = CameraPath.scripted(data.map, data.playerStartX, data.playerStartY, 3.0 * Game.FIXED_DT);
+
+        entities = new ArrayList<>();
+        Random rnd = new Random(42);
+        for (int placed = 0, tries = 0; placed < sprites && tries < sprites * 100; tries++) {
+            int tx = rnd.nextInt(data.map.w), ty = rnd.nextInt(data.map.h);
+            if (data.map.at(tx, ty) != 0) continue;
+            entities.add(new Guard(tx + 0.5, ty + 0.5, placed % 2 == 0 ? Assets.GUARD_WALK : Assets.SS_WALK));
+            placed++;
+        }
+
+        String[] wh = resolution.split("x");
+        int w = Integer.parseInt(wh[0]), h = Integer.parseInt(wh[1]);
+        raycaster = new Raycaster(w, h);
+        fb = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        path.apply(frame, player);
+        raycaster.render(fb, data.map, player, entities, frame * Game.FIXED_DT);
+        frame++;
+        return fb;
+    }
+}
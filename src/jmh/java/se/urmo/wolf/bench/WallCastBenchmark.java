@@ -0,0 +1,84 @@
+package se.urmo.wolf.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urmo.wolf.entities.Player;
+import se.urmo.wolf.gfx.Assets;
+import se.urmo.wolf.render.Raycaster;
+import se.urmo.wolf.world.GameMap;
+import se.urmo.wolf.world.MapData;
+import se.urmo.wolf.world.MapLoader;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full frames with and without adaptive column casting. "corridors" looks down a 120-tile corridor,
+ * the case adaptive casting is for; "map1" stands in the player start of the shipped level.
+ * The camera yaws a little every frame so consecutive frames don't repeat.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class WallCastBenchmark {
+    @Param({"map1", "corridors"})
+    public String map;
+
+    @Param({"true", "false"})
+    public boolean adaptive;
+
+    @Param({"800x600", "1920x1080"})
+    public String resolution;
+
+    private GameMap gameMap;
+    private Player player;
+    private Raycaster raycaster;
+    private BufferedImage fb;
+    private double baseAngle;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        Assets.init();
+        if (map.equals("map1")) {
+            MapData data = MapLoader.load("maps/map1.txt");
+            gameMap = data.map;
+            player = new Player(data.playerStartX, data.playerStartY, gameMap);
+            baseAngle = Math.atan2(player.dirY, player.dirX);
+        } else {
+            gameMap = BenchMaps.corridors(128, 33, 3);
+            player = new Player(2.5, 2.5, gameMap);
+            baseAngle = 0.0;
+        }
+        String[] wh = resolution.split("x");
+        int w = Integer.parseInt(wh[0]), h = Integer.parseInt(wh[1]);
+        raycaster = new Raycaster(w, h);
+        raycaster.setAdaptiveColumns(adaptive);
+        fb = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        double a = baseAngle + 0.15 * Math.sin(frame * 0.05);
+        player.dirX = Math.cos(a);
+        player.dirY = Math.sin(a);
+        player.planeX = -0.66 * player.dirY;
+        player.planeY = 0.66 * player.dirX;
+        raycaster.render(fb, gameMap, player, Collections.emptyList(), 0.0);
+        frame++;
+        return fb;
+    }
+}
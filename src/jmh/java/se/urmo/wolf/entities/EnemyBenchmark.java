@@ -0,0 +1,66 @@
+package se.urmo.wolf.entities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urmo.wolf.gfx.Assets;
+import se.urmo.wolf.world.GameMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enemy.canSee is protected, so this lives in the entities package. Each case keeps the same
+ * outcome every call, so the LOS bookkeeping (and its logging) only fires on the first one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EnemyBenchmark {
+    private GameMap map;
+    private Player player;
+    private Guard visible, behindWall, outOfRange, facingAway;
+
+    @Setup
+    public void setup() {
+        Assets.init();
+        // 32x16 open room split by a wall at x = 16
+        int w = 32, h = 16;
+        int[][] grid = new int[h][w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                grid[y][x] = x == 0 || y == 0 || x == w - 1 || y == h - 1 || x == 16 ? 1 : 0;
+            }
+        }
+        map = new GameMap(w, h, grid);
+        player = new Player(10.5, 8.5, map);
+
+        visible = new Guard(3.5, 6.5, Assets.GUARD_WALK);       // 7 tiles away, facing +x
+        behindWall = new Guard(17.5, 8.5, Assets.GUARD_WALK);   // in range, wall in between
+        behindWall.dirX = -1;
+        outOfRange = new Guard(1.5, 8.5, Assets.GUARD_WALK);    // 9 tiles, beyond view distance
+        facingAway = new Guard(5.5, 8.5, Assets.GUARD_WALK);
+        facingAway.dirX = -1;
+    }
+
+    @Benchmark
+    public boolean canSeeVisible() { return visible.canSee(map, player); }
+
+    @Benchmark
+    public boolean canSeeOccluded() { return behindWall.canSee(map, player); }
+
+    @Benchmark
+    public boolean canSeeOutOfRange() { return outOfRange.canSee(map, player); }
+
+    @Benchmark
+    public boolean canSeeFacingAway() { return facingAway.canSee(map, player); }
+}
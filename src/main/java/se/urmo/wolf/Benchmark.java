@@ -0,0 +1,150 @@
+package se.urmo.wolf;
+
+import se.urmo.wolf.entities.Guard;
+import se.urmo.wolf.entities.Player;
+import se.urmo.wolf.entities.SpriteEntity;
+import se.urmo.wolf.gfx.Assets;
+import se.urmo.wolf.render.Raycaster;
+import se.urmo.wolf.world.CameraPath;
+import se.urmo.wolf.world.MapData;
+import se.urmo.wolf.world.MapLoader;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Headless renderer benchmark: drives the camera along a scripted or recorded path without a Window
+ * and reports frame-time statistics and a per-stage breakdown.
+ *
+ * <pre>
+ * java -cp target/classes se.urmo.wolf.Benchmark [--map maps/map1.txt] [--path camera-path.txt]
+ *     [--frames 600] [--warmup 120] [--width 800] [--height 600] [--guards 0]
+ *     [--legacy] [--serial] [--fixed] [--no-mip] [--no-adaptive] [--fog 0.06]
+ * </pre>
+ */
+public final class Benchmark {
+    private String mapPath = "maps/map1.txt";
+    private Path cameraPath;
+    private int frames = 600, warmup = 120;
+    private int width = Game.WIDTH, height = Game.HEIGHT;
+    private int extraGuards = 0;
+    private boolean legacy, serial, fixed, noMip, noAdaptive;
+    private double fogDensity = Raycaster.DEFAULT_FOG_DENSITY;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        Benchmark b = new Benchmark();
+        b.parse(args);
+        b.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--map" -> mapPath = args[++i];
+                case "--path" -> cameraPath = Path.of(args[++i]);
+                case "--frames" -> frames = Integer.parseInt(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--width" -> width = Integer.parseInt(args[++i]);
+                case "--height" -> height = Integer.parseInt(args[++i]);
+                case "--guards" -> extraGuards = Integer.parseInt(args[++i]);
+                case "--legacy" -> legacy = true;
+                case "--serial" -> serial = true;
+                case "--fixed" -> fixed = true;
+                case "--no-mip" -> noMip = true;
+                case "--no-adaptive" -> noAdaptive = true;
+                case "--fog" -> fogDensity = Double.parseDouble(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (frames < 1) throw new IllegalArgumentException("--frames must be at least 1: " + frames);
+        if (warmup < 0) throw new IllegalArgumentException("--warmup can't be negative: " + warmup);
+    }
+
+    private void run() throws IOException {
+        Assets.init();
+        MapData data = MapLoader.load(mapPath);
+        Player player = new Player(data.playerStartX, data.playerStartY, data.map);
+
+        List<SpriteEntity> sprites = new ArrayList<>();
+        for (var s : data.spawns) {
+            if (s.type == MapData.Spawn.Type.GUARD) sprites.add(new Guard(s.x, s.y, Assets.GUARD_WALK));
+        }
+        Random rnd = new Random(42);
+        for (int placed = 0, tries = 0; placed < extraGuards && tries < extraGuards * 100; tries++) {
+            int tx = rnd.nextInt(data.map.w), ty = rnd.nextInt(data.map.h);
+            if (data.map.at(tx, ty) != 0) continue;
+            sprites.add(new Guard(tx + 0.5, ty + 0.5, placed % 2 == 0 ? Assets.GUARD_WALK : Assets.SS_WALK));
+            placed++;
+        }
+
+        CameraPath path = cameraPath != null
+                ? CameraPath.load(cameraPath)
+                : CameraPath.scripted(data.map, data.playerStartX, data.playerStartY, 3.0 * Game.FIXED_DT);
+
+        Raycaster raycaster = new Raycaster(width, height);
+        raycaster.setDirectRaster(!legacy);
+        raycaster.setParallelWalls(!serial);
+        raycaster.setParallelFloor(!serial);
+        raycaster.setFixedPoint(fixed);
+        raycaster.setMipmapping(!noMip);
+        raycaster.setAdaptiveColumns(!noAdaptive);
+        raycaster.setFogDensity(fogDensity);
+        BufferedImage fb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        Raycaster.Stage[] stages = Raycaster.Stage.values();
+        long[] total = new long[frames];
+        long[][] perStage = new long[stages.length][frames];
+
+        for (int f = 0; f < warmup + frames; f++) {
+            path.apply(f, player);
+            data.map.focus(player.x, player.y);
+            long t0 = System.nanoTime();
+            raycaster.render(fb, data.map, player, sprites, f * Game.FIXED_DT);
+            long dt = System.nanoTime() - t0;
+            int i = f - warmup;
+            if (i < 0) continue;
+            total[i] = dt;
+            for (Raycaster.Stage s : stages) perStage[s.ordinal()][i] = raycaster.lastStageNanos(s);
+        }
+
+        System.out.printf(Locale.ROOT, "map=%s path=%s (%d poses) %dx%d sprites=%d frames=%d warmup=%d%n",
+                mapPath, cameraPath != null ? cameraPath : "scripted", path.size(),
+                width, height, sprites.size(), frames, warmup);
+        System.out.printf(Locale.ROOT, "mode: %s%s%s%s, fog %.3f, %d cores%n",
+                legacy ? "legacy getRGB/setRGB" : "raster", serial ? ", serial" : ", parallel",
+                fixed ? ", fixed-point" : "", noMip ? ", no mipmaps" : "", fogDensity,
+                Runtime.getRuntime().availableProcessors());
+        double meanMs = mean(total) / 1e6;
+        System.out.printf(Locale.ROOT, "fps %.1f%n", 1000.0 / meanMs);
+        printRow("frame", total);
+        for (Raycaster.Stage s : stages) printRow(s.name().toLowerCase(Locale.ROOT), perStage[s.ordinal()]);
+    }
+
+    private static void printRow(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "%-8s mean %7.3f ms  p50 %7.3f  p95 %7.3f  p99 %7.3f  max %7.3f%n",
+                name, mean(nanos) / 1e6, percentile(sorted, 50) / 1e6, percentile(sorted, 95) / 1e6,
+                percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double mean(long[] v) {
+        double sum = 0;
+        for (long x : v) sum += x;
+        return v.length == 0 ? 0 : sum / v.length;
+    }
+
+    /** Nearest-rank percentile of an ascending array. */
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -1,10 +1,16 @@
 package se.urmo.wolf;
 
+import se.urmo.wolf.core.EventLog;
+import se.urmo.wolf.core.FrameProfiler;
+import se.urmo.wolf.core.FrameProfiler.Stage;
 import se.urmo.wolf.core.StateManager;
 import se.urmo.wolf.gfx.Assets;
 import se.urmo.wolf.states.LevelStartState;
 import se.urmo.wolf.states.MenuState;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class Game {
     public static final int WIDTH = 800;
     public static final int HEIGHT = 600;
@@ -14,6 +20,9 @@ public class Game {
     private final StateManager sm;
 
     public Game() {
+        // -Dwolf.log.level=info|debug|trace writes gameplay events to -Dwolf.log.file (events.jsonl);
+        // -Dwolf.log.jfr=info|debug|trace (or true) commits them to Flight Recorder, with or without it
+        EventLog.start();
         Assets.init();
         window = new Window(WIDTH, HEIGHT, "Wolf-like Java Raycaster");
         sm = new StateManager();
@@ -21,10 +30,21 @@ public class Game {
         sm.set(new LevelStartState(sm, "maps/map1.txt", "FLOOR 1"));
     }
 
+    private void dumpProfile(Path out) {
+        try {
+            sm.profiler().writeCsv(out);
+            System.out.println("Wrote " + sm.profiler().size() + " frame timings to " + out.toAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     public void run() {
+        FrameProfiler profiler = sm.profiler();
         long prev = System.nanoTime();
         double acc = 0.0;
-        while (window.isOpen()) {
+        while (window.isOpen() && !sm.isQuitting()) {
+            profiler.beginFrame();
             long now = System.nanoTime();
             double dt = (now - prev) / 1e9;
             prev = now;
@@ -32,6 +52,8 @@ public class Game {
 
             // Input
             window.poll();
+            long t = System.nanoTime();
+            profiler.add(Stage.INPUT, t - now);
 
             // Fixed update
             while (acc >= FIXED_DT) {
@@ -39,15 +61,27 @@ public class Game {
                 sm.update(FIXED_DT);
                 acc -= FIXED_DT;
             }
+            long t2 = System.nanoTime();
+            profiler.add(Stage.UPDATE, t2 - t);
 
-            // Render
+            // Render (the play state times its own stages)
             sm.render(window);
+            long t3 = System.nanoTime();
             window.present();
+            profiler.add(Stage.PRESENT, System.nanoTime() - t3);
+            profiler.dropped(window.takeDroppedFrames());
+            profiler.endFrame();
         }
         window.dispose();
+        // -Dwolf.profile.csv=frames.csv dumps the profiler's recent frames on exit. Only from here,
+        // once the loop has stopped writing into the profiler
+        String csv = System.getProperty("wolf.profile.csv");
+        if (csv != null) dumpProfile(Path.of(csv));
+        EventLog.close();
     }
 
     public static void main(String[] args) {
         new Game().run();
+        System.exit(0);   // the AWT threads would keep the JVM up
     }
 }
\ No newline at end of file
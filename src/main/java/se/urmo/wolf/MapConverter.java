@@ -0,0 +1,38 @@
+package se.urmo.wolf;
+
+import se.urmo.wolf.world.MapData;
+import se.urmo.wolf.world.MapLoader;
+import se.urmo.wolf.world.WmapFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Converts a text map (a classpath resource or a file) to the binary .wmap format.
+ *
+ * <pre>
+ * java -cp target/classes se.urmo.wolf.MapConverter maps/map1.txt [map1.wmap]
+ * </pre>
+ * The output defaults to the input's file name with a .wmap extension, in the working directory.
+ */
+public final class MapConverter {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: MapConverter <map.txt> [out.wmap]");
+            System.exit(2);
+        }
+        String in = args[0];
+        Path out = Path.of(args.length > 1 ? args[1] : outName(in));
+
+        MapData data = MapLoader.loadText(in);
+        WmapFile.write(out, data);
+        System.out.printf("Wrote %dx%d map with %d spawns to %s%n",
+                data.map.w, data.map.h, data.spawns.size(), out.toAbsolutePath());
+    }
+
+    private static String outName(String in) {
+        String name = Path.of(in).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0 ? name.substring(0, dot) : name) + WmapFile.EXTENSION;
+    }
+}
@@ -6,17 +6,53 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.event.*;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Game window. Frames are triple buffered: the game thread draws into one framebuffer while a
+ * present thread blits another to the screen, and a buffer only goes back into rotation once its
+ * blit has finished, so a frame is never overwritten mid-present. Each buffer therefore holds the
+ * frame from three presents ago; a state that draws over the last frame rather than a whole one
+ * calls {@link #keepLastFrame} first.
+ */
 public class Window {
+    private static final int BUFFERS = 3;
+    // How long present() waits for a free buffer before checking the present thread is still alive
+    private static final long PRESENT_POLL_MILLIS = 500;
+
     private final JFrame frame;
     private final Canvas canvas;
-    private final BufferedImage framebuffer;
     private final Input input;
 
+    // Buffers the game thread may draw into, and finished frames waiting for the present thread
+    private final BlockingQueue<BufferedImage> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<BufferedImage> ready = new ArrayBlockingQueue<>(BUFFERS);
+    private final Thread presenter;
+    private volatile boolean running = true;
+    private long presentWaitNanos;   // how long the last present() waited for a free buffer
+    // Frames that never reached the screen since takeDroppedFrames last asked, from either thread
+    private final AtomicInteger dropped = new AtomicInteger();
+    // Owned by the game thread until handed over in present()
+    private BufferedImage framebuffer;
+    private BufferedImage lastFrame;   // the last one handed over, for keepLastFrame
+    // One Graphics2D per buffer, only ever used from the game thread
+    private final Map<BufferedImage, Graphics2D> graphics = new IdentityHashMap<>();
+
+    // Reduced-resolution 3D view, upscaled into the framebuffer before overlays are drawn
+    private BufferedImage scene;
+    private int[] srcColumn;   // source column for each framebuffer column
+
     public Window(int width, int height, String title) {
         frame = new JFrame(title);
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Closing ends the game loop (isOpen), which then shuts down in order
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         frame.setResizable(false);
 
         canvas = new Canvas();
@@ -26,7 +62,8 @@ public class Window {
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
 
-        framebuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < BUFFERS; i++) free.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+        framebuffer = free.poll();
         input = new Input();
         canvas.addKeyListener(input);
         canvas.addFocusListener(new FocusAdapter() {
@@ -34,10 +71,39 @@ public class Window {
         });
         canvas.setFocusable(true);
         canvas.requestFocus();
+
+        presenter = new Thread(this::presentLoop, "present");
+        presenter.setDaemon(true);
+        presenter.start();
     }
 
-    public boolean isOpen() { return frame.isDisplayable(); }
-    public void dispose() { frame.dispose(); }
+    /** Offscreen window for headless runs: no frame or present thread, frames are drawn and dropped. */
+    private Window(int width, int height) {
+        frame = null;
+        canvas = null;
+        presenter = null;
+        input = new Input();
+        for (int i = 0; i < BUFFERS; i++) free.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+        framebuffer = free.poll();
+    }
+
+    public static Window offscreen(int width, int height) { return new Window(width, height); }
+
+    public boolean isOpen() { return frame == null || frame.isDisplayable(); }
+
+    public void dispose() {
+        running = false;
+        for (Graphics2D g : graphics.values()) g.dispose();
+        graphics.clear();
+        if (presenter == null) return;
+        presenter.interrupt();
+        try {
+            presenter.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        frame.dispose();
+    }
 
     public void poll() {
         input.poll();
@@ -45,17 +111,156 @@ public class Window {
 
     public BufferedImage getFramebuffer() { return framebuffer; }
 
+    /**
+     * Target for the 3D view at w x h. At native size this is the framebuffer itself; otherwise a
+     * separate buffer that {@link #upscaleScene} stretches over the framebuffer.
+     */
+    public BufferedImage getSceneBuffer(int w, int h) {
+        if (w == framebuffer.getWidth() && h == framebuffer.getHeight()) return framebuffer;
+        if (scene == null || scene.getWidth() != w || scene.getHeight() != h) {
+            scene = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            srcColumn = new int[framebuffer.getWidth()];
+            for (int x = 0; x < srcColumn.length; x++) srcColumn[x] = x * w / srcColumn.length;
+        }
+        return scene;
+    }
+
+    /**
+     * Nearest-neighbour upscale of a scene buffer into the framebuffer. Does nothing if the
+     * scene was rendered at native size. Repeated rows are copied instead of resampled.
+     */
+    public void upscaleScene(BufferedImage rendered) {
+        if (rendered == framebuffer) return;
+        int[] src = ((DataBufferInt) rendered.getRaster().getDataBuffer()).getData();
+        int[] dst = ((DataBufferInt) framebuffer.getRaster().getDataBuffer()).getData();
+        int sw = rendered.getWidth(), sh = rendered.getHeight();
+        int dw = framebuffer.getWidth(), dh = framebuffer.getHeight();
+        int[] cols = srcColumn;
+        int prevRow = -1;
+        for (int y = 0; y < dh; y++) {
+            int sy = y * sh / dh;
+            int o = y * dw;
+            if (sy == prevRow) {
+                System.arraycopy(dst, o - dw, dst, o, dw);
+                continue;
+            }
+            int so = sy * sw;
+            for (int x = 0; x < dw; x++) dst[o + x] = src[so + cols[x]];
+            prevRow = sy;
+        }
+    }
+
+    /**
+     * Copies the last frame handed to {@link #present()} into the current framebuffer, for drawing
+     * over it as a single buffer would have it. The present thread only reads that frame, so both
+     * can. Costs a framebuffer copy, so only for states that need it.
+     */
+    public void keepLastFrame() {
+        if (lastFrame == null || lastFrame == framebuffer) return;
+        int[] src = ((DataBufferInt) lastFrame.getRaster().getDataBuffer()).getData();
+        int[] dst = ((DataBufferInt) framebuffer.getRaster().getDataBuffer()).getData();
+        System.arraycopy(src, 0, dst, 0, dst.length);
+    }
+
+    /**
+     * Graphics for the current framebuffer. Each buffer keeps one Graphics2D for its whole life, so
+     * a frame creates none: callers must not dispose it, and must put back any composite, clip or
+     * transform they change.
+     */
     public Graphics2D getFrameGraphics() {
-        return framebuffer.createGraphics();
+        return graphics.computeIfAbsent(framebuffer, BufferedImage::createGraphics);
     }
 
+    /**
+     * Hands the finished framebuffer to the present thread and switches to a free one. Blocks only
+     * if every other buffer is still queued or on screen; each wait of PRESENT_POLL_MILLIS that
+     * ends without one counts as a dropped frame, the screen having gone that long unchanged.
+     * @throws IllegalStateException if the present thread has died, rather than waiting forever
+     */
     public void present() {
+        lastFrame = framebuffer;
+        if (presenter == null) {
+            // Offscreen: rotate buffers the same way, just without a screen
+            free.add(framebuffer);
+            framebuffer = free.poll();
+            return;
+        }
+        ready.add(framebuffer);
+        long waitStart = System.nanoTime();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                BufferedImage next = free.poll(PRESENT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (next != null) { framebuffer = next; break; }
+                if (!presenter.isAlive()) throw new IllegalStateException("Present thread is gone");
+                dropped.incrementAndGet();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        presentWaitNanos = System.nanoTime() - waitStart;
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Time the last {@link #present()} spent blocked on the present thread, which is idle time (the
+     * display holding the game back) rather than work.
+     */
+    public long lastPresentWaitNanos() { return presentWaitNanos; }
+
+    /**
+     * Frames dropped since the last call: skipped by the present thread for a newer one, lost to a
+     * failed blit, or waits for a free buffer that timed out.
+     */
+    public int takeDroppedFrames() { return dropped.getAndSet(0); }
+
+    private void presentLoop() {
+        int failed = 0;   // frames dropped in a row by failing blits; only the first is logged in full
+        while (running) {
+            BufferedImage shown;
+            try {
+                shown = ready.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // If the game got ahead, skip straight to the newest frame and recycle the stale ones
+            BufferedImage newer;
+            while ((newer = ready.poll()) != null) {
+                free.add(shown);
+                shown = newer;
+                dropped.incrementAndGet();
+            }
+            try {
+                blit(shown);
+                if (failed > 0) System.err.println("Present recovered after " + failed + " dropped frames");
+                failed = 0;
+            } catch (IllegalStateException e) {
+                // Canvas not displayable (window closing); drop the frame
+                dropped.incrementAndGet();
+            } catch (RuntimeException e) {
+                // Java2D can fail on a resize or a lost device; drop the frame and keep presenting
+                dropped.incrementAndGet();
+                if (failed++ == 0) {
+                    System.err.println("Present failed, dropping frames until it recovers:");
+                    e.printStackTrace();
+                }
+            } finally {
+                free.add(shown);
+            }
+        }
+    }
+
+    private void blit(BufferedImage image) {
         BufferStrategy bs = canvas.getBufferStrategy();
-        if (bs == null) { canvas.createBufferStrategy(2); return; }
-        Graphics g = bs.getDrawGraphics();
-        g.drawImage(framebuffer, 0, 0, canvas.getWidth(), canvas.getHeight(), null);
-        g.dispose();
-        bs.show();
+        if (bs == null) { canvas.createBufferStrategy(2); bs = canvas.getBufferStrategy(); }
+        do {
+            do {
+                Graphics g = bs.getDrawGraphics();
+                g.drawImage(image, 0, 0, canvas.getWidth(), canvas.getHeight(), null);
+                g.dispose();
+            } while (bs.contentsRestored());
+            bs.show();
+        } while (bs.contentsLost());
         Toolkit.getDefaultToolkit().sync();
     }
 
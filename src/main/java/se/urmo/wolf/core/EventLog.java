@@ -0,0 +1,306 @@
+package se.urmo.wolf.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured gameplay events (AI state changes, shots, hits, doors) written to a JSONL file and/or
+ * committed to Flight Recorder.
+ *
+ * <p>The game thread records an event into a preallocated ring of primitive arrays and moves on; a
+ * daemon writer drains the ring to the file. Recording allocates nothing: text fields are only ever
+ * enum names and literals. When the ring is full, events are dropped and counted rather than
+ * blocking the frame. Each typed method starts with a level check, so with the log off (the
+ * default) a call costs one static read and compare. Events come from the game thread only; the ring
+ * has a single producer.
+ *
+ * <p>Configured by system properties read in {@link #start()}:
+ * -Dwolf.log.level=off|info|debug|trace for the file, -Dwolf.log.file (default events.jsonl), and
+ * -Dwolf.log.jfr=off|info|debug|trace to commit events as {@link GameplayEvent}s for Flight
+ * Recorder (true means trace). The two are separate: JFR alone needs neither the file nor the
+ * writer thread, and events go to whichever sinks take their level.
+ */
+public final class EventLog {
+    public enum Level { OFF, INFO, DEBUG, TRACE }
+
+    /** Event kinds, with the level they're logged at and the names of their number and text fields. */
+    public enum Type {
+        SPAWN(Level.DEBUG, names(), names()),
+        ENEMY_STATE(Level.INFO, names(), names("from", "to", "reason")),
+        ENEMY_FIRE(Level.INFO, names("dist", "chance", "roll"), names("result")),
+        FIRE_DONE(Level.DEBUG, names("cooldown"), names()),
+        LOS(Level.TRACE, names("player_x", "player_y", "memory"), names("change")),
+        PATROL_SEGMENT(Level.DEBUG, names("ax", "ay", "bx", "by"), names("axis")),
+        PATROL_REATTACH(Level.TRACE, names("from_x", "from_y"), names("reason", "dir")),
+        PATROL_FLIP(Level.TRACE, names(), names("cause", "dir")),
+        PLAYER_SHOT(Level.INFO, names(), names()),
+        ENEMY_HIT(Level.INFO, names("health"), names("result")),
+        DOOR_OPENED(Level.INFO, names(), names());
+
+        final Level level;
+        final String key;
+        final String[] nums, texts;
+
+        Type(Level level, String[] nums, String[] texts) {
+            this.level = level;
+            this.key = name().toLowerCase(Locale.ROOT);
+            this.nums = nums;
+            this.texts = texts;
+        }
+
+        private static String[] names(String... n) { return n; }
+    }
+
+    private static final int CAPACITY = 1 << 13;   // power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final int NUMS = 4, TEXTS = 3;
+    private static final long IDLE_PARK_NANOS = 5_000_000;
+
+    // The ring, one slot per event; numbers and texts are [slot * NUMS + i] and [slot * TEXTS + i]
+    private static final long[] time = new long[CAPACITY];
+    private static final Type[] type = new Type[CAPACITY];
+    private static final int[] actor = new int[CAPACITY];
+    private static final double[] pos = new double[CAPACITY * 2];
+    private static final double[] num = new double[CAPACITY * NUMS];
+    private static final String[] text = new String[CAPACITY * TEXTS];
+
+    private static volatile long written;   // events published by the game thread
+    private static volatile long read;      // events the writer is done with
+    private static final AtomicLong dropped = new AtomicLong();
+
+    // Types at or under these levels go to the file and to JFR; threshold is the higher of the two,
+    // so a call with both off costs one read and compare. Set by start/close and the writer thread
+    private static volatile int fileLevel = Level.OFF.ordinal(), jfrLevel = Level.OFF.ordinal();
+    private static volatile int threshold = Level.OFF.ordinal();
+    private static boolean started;
+    private static long epoch = System.nanoTime();
+    private static volatile boolean running;
+    private static Thread writer;
+    private static BufferedWriter out;
+
+    private EventLog() {}
+
+    /**
+     * Reads the wolf.log.* properties; unless the file level is off, opens the file and starts the
+     * writer, and unless the JFR level is off, commits events to Flight Recorder.
+     */
+    public static synchronized void start() {
+        if (started) return;
+        started = true;
+        epoch = System.nanoTime();
+        Level jfr = level("wolf.log.jfr");
+        if (jfr != Level.OFF) {
+            jfrLevel = jfr.ordinal();
+            System.out.println("Committing " + jfr.name().toLowerCase(Locale.ROOT) + " events to Flight Recorder");
+        }
+        Level level = level("wolf.log.level");
+        if (level != Level.OFF) {
+            Path file = Path.of(System.getProperty("wolf.log.file", "events.jsonl"));
+            try {
+                out = Files.newBufferedWriter(file);
+                running = true;
+                writer = new Thread(EventLog::drainLoop, "event-log");
+                writer.setDaemon(true);
+                writer.start();
+                fileLevel = level.ordinal();
+                System.out.println("Logging " + level.name().toLowerCase(Locale.ROOT) + " events to "
+                        + file.toAbsolutePath());
+            } catch (IOException e) {
+                System.err.println("Event log file disabled, can't open " + file + ": " + e);
+            }
+        }
+        if (writer != null || jfrLevel != Level.OFF.ordinal()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(EventLog::close, "event-log-close"));
+        }
+        threshold = Math.max(fileLevel, jfrLevel);
+    }
+
+    /** A level property; true and false stand for trace and off. */
+    private static Level level(String property) {
+        String v = System.getProperty(property, "off").toUpperCase(Locale.ROOT);
+        return switch (v) {
+            case "TRUE" -> Level.TRACE;
+            case "FALSE" -> Level.OFF;
+            default -> Level.valueOf(v);
+        };
+    }
+
+    /** Stops recording, writes out what's left in the ring and closes the file. */
+    public static synchronized void close() {
+        threshold = fileLevel = jfrLevel = Level.OFF.ordinal();
+        if (writer == null) return;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+            long lost = dropped.get();
+            if (lost > 0) out.write("{\"type\":\"dropped\",\"count\":" + lost + "}\n");
+            out.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+
+    public static boolean isEnabled(Type t) {
+        return t.level.ordinal() <= threshold;
+    }
+
+    /** Events dropped because the ring was full. */
+    public static long dropped() { return dropped.get(); }
+
+    // ---- Typed events -------------------------------------------------------
+
+    public static void spawn(int enemy, double x, double y) {
+        if (isEnabled(Type.SPAWN)) record(Type.SPAWN, enemy, x, y, 0, 0, 0, 0, null, null, null);
+    }
+
+    public static void enemyState(int enemy, double x, double y, Enum<?> from, Enum<?> to, String reason) {
+        if (isEnabled(Type.ENEMY_STATE)) {
+            record(Type.ENEMY_STATE, enemy, x, y, 0, 0, 0, 0, from.name(), to.name(), reason);
+        }
+    }
+
+    public static void enemyFire(int enemy, double x, double y, double dist, double chance, double roll, boolean hit) {
+        if (isEnabled(Type.ENEMY_FIRE)) {
+            record(Type.ENEMY_FIRE, enemy, x, y, dist, chance, roll, 0, hit ? "hit" : "miss", null, null);
+        }
+    }
+
+    public static void fireDone(int enemy, double x, double y, double cooldown) {
+        if (isEnabled(Type.FIRE_DONE)) record(Type.FIRE_DONE, enemy, x, y, cooldown, 0, 0, 0, null, null, null);
+    }
+
+    public static void los(int enemy, double x, double y, boolean acquired, double playerX, double playerY, double memory) {
+        if (isEnabled(Type.LOS)) {
+            record(Type.LOS, enemy, x, y, playerX, playerY, memory, 0, acquired ? "acquired" : "lost", null, null);
+        }
+    }
+
+    public static void patrolSegment(int enemy, double x, double y, String axis,
+                                     double ax, double ay, double bx, double by) {
+        if (isEnabled(Type.PATROL_SEGMENT)) {
+            record(Type.PATROL_SEGMENT, enemy, x, y, ax, ay, bx, by, axis, null, null);
+        }
+    }
+
+    public static void patrolReattach(int enemy, double x, double y, double fromX, double fromY,
+                                      String reason, String dir) {
+        if (isEnabled(Type.PATROL_REATTACH)) {
+            record(Type.PATROL_REATTACH, enemy, x, y, fromX, fromY, 0, 0, reason, dir, null);
+        }
+    }
+
+    public static void patrolFlip(int enemy, double x, double y, String cause, String dir) {
+        if (isEnabled(Type.PATROL_FLIP)) record(Type.PATROL_FLIP, enemy, x, y, 0, 0, 0, 0, cause, dir, null);
+    }
+
+    /** The player fired from (x, y); target is the enemy hit, or -1 for a miss. */
+    public static void playerShot(int target, double x, double y) {
+        if (isEnabled(Type.PLAYER_SHOT)) record(Type.PLAYER_SHOT, target, x, y, 0, 0, 0, 0, null, null, null);
+    }
+
+    public static void enemyHit(int enemy, double x, double y, int health, boolean killed) {
+        if (isEnabled(Type.ENEMY_HIT)) {
+            record(Type.ENEMY_HIT, enemy, x, y, health, 0, 0, 0, killed ? "killed" : "hit", null, null);
+        }
+    }
+
+    public static void doorOpened(int tileX, int tileY) {
+        if (isEnabled(Type.DOOR_OPENED)) record(Type.DOOR_OPENED, -1, tileX, tileY, 0, 0, 0, 0, null, null, null);
+    }
+
+    // ---- Ring ---------------------------------------------------------------
+
+    private static void record(Type t, int who, double x, double y, double n0, double n1, double n2, double n3,
+                               String s0, String s1, String s2) {
+        int level = t.level.ordinal();
+        if (level <= fileLevel) ring(t, who, x, y, n0, n1, n2, n3, s0, s1, s2);
+        if (level <= jfrLevel) GameplayEvent.emit(t.key, who, x, y, n0, n1, n2, n3, s0, s1, s2);
+    }
+
+    private static void ring(Type t, int who, double x, double y, double n0, double n1, double n2, double n3,
+                             String s0, String s1, String s2) {
+        long w = written;
+        if (w - read >= CAPACITY) { dropped.incrementAndGet(); return; }
+        long now = System.nanoTime();
+        int slot = (int) (w & MASK);
+        time[slot] = now;
+        type[slot] = t;
+        actor[slot] = who;
+        pos[slot * 2] = x; pos[slot * 2 + 1] = y;
+        int n = slot * NUMS;
+        num[n] = n0; num[n + 1] = n1; num[n + 2] = n2; num[n + 3] = n3;
+        int s = slot * TEXTS;
+        text[s] = s0; text[s + 1] = s1; text[s + 2] = s2;
+        written = w + 1;   // publishes the slot to the writer
+    }
+
+    private static void drainLoop() {
+        StringBuilder sb = new StringBuilder(256);
+        while (true) {
+            boolean stopping = !running;   // read before draining so nothing published before close is missed
+            long r = read, w = written;
+            try {
+                for (; r < w; r++) {
+                    format(sb, (int) (r & MASK));
+                    out.append(sb);
+                }
+                out.flush();
+            } catch (IOException e) {
+                System.err.println("Event log write failed, stopping the file: " + e);
+                fileLevel = Level.OFF.ordinal();
+                threshold = jfrLevel;
+                return;
+            }
+            read = r;
+            if (stopping) return;
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    /** One event as a JSON line: time in ms since start, type, actor, position, then the type's fields. */
+    private static void format(StringBuilder sb, int slot) {
+        Type t = type[slot];
+        sb.setLength(0);
+        sb.append("{\"t\":");
+        number(sb, (time[slot] - epoch) / 1e6);
+        sb.append(",\"type\":\"").append(t.key).append('"');
+        if (actor[slot] >= 0) sb.append(",\"id\":").append(actor[slot]);
+        sb.append(",\"x\":");
+        number(sb, pos[slot * 2]);
+        sb.append(",\"y\":");
+        number(sb, pos[slot * 2 + 1]);
+        for (int i = 0; i < t.nums.length; i++) {
+            sb.append(",\"").append(t.nums[i]).append("\":");
+            number(sb, num[slot * NUMS + i]);
+        }
+        for (int i = 0; i < t.texts.length; i++) {
+            String s = text[slot * TEXTS + i];
+            sb.append(",\"").append(t.texts[i]).append("\":");
+            if (s == null) { sb.append("null"); continue; }
+            sb.append('"');
+            for (int c = 0; c < s.length(); c++) {
+                char ch = s.charAt(c);
+                if (ch == '"' || ch == '\\') sb.append('\\');
+                sb.append(ch);
+            }
+            sb.append('"');
+        }
+        sb.append("}\n");
+    }
+
+    /** v rounded to 3 decimals, without a trailing ".0" on whole numbers. */
+    private static void number(StringBuilder sb, double v) {
+        long milli = Math.round(v * 1000);
+        if (milli % 1000 == 0) sb.append(milli / 1000);
+        else sb.append(milli / 1000.0);
+    }
+}
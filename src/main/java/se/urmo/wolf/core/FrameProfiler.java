@@ -0,0 +1,156 @@
+package se.urmo.wolf.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-frame stage timings, allocated bytes and dropped frames for the last {@link #CAPACITY} frames, in a ring of
+ * primitive arrays. Recording is a few nanoTime reads and one allocation counter read per frame and
+ * allocates nothing, so it's always on. The game loop brackets each frame with
+ * {@link #beginFrame()}/{@link #endFrame()} and stages add their time in between.
+ */
+public final class FrameProfiler {
+    /** Where a frame's time goes; stage times needn't add up to the frame, the rest is untracked. */
+    public enum Stage { INPUT, UPDATE, FLOOR, WALLS, SPRITES, OVERLAYS, PRESENT }
+
+    public static final int CAPACITY = 1024;
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long[] frameNanos = new long[CAPACITY];
+    private final long[] stageNanos = new long[CAPACITY * STAGES.length];   // [slot * stages + stage]
+    private final long[] allocBytes = new long[CAPACITY];
+    private final int[] droppedFrames = new int[CAPACITY];
+    private final long[] current = new long[STAGES.length];
+    private final long[] sorted = new long[CAPACITY];
+    private long frames;            // frames recorded so far; the newest is at (frames - 1) % CAPACITY
+    private long frameStart;
+    private long allocStart;
+    private int currentDropped;
+    private long droppedTotal;
+
+    // Null when the JVM can't count per-thread allocation; bytes then read as -1
+    private final com.sun.management.ThreadMXBean threads = allocationCounter();
+
+    public void beginFrame() {
+        Arrays.fill(current, 0);
+        currentDropped = 0;
+        allocStart = allocated();
+        frameStart = System.nanoTime();
+    }
+
+    /** Adds nanos to stage s of the current frame. */
+    public void add(Stage s, long nanos) {
+        current[s.ordinal()] += nanos;
+    }
+
+    /** Counts frames the window dropped against the current frame. */
+    public void dropped(int frames) {
+        currentDropped += frames;
+    }
+
+    public void endFrame() {
+        long nanos = System.nanoTime() - frameStart;
+        int slot = (int) (frames % CAPACITY);
+        frameNanos[slot] = nanos;
+        System.arraycopy(current, 0, stageNanos, slot * STAGES.length, STAGES.length);
+        allocBytes[slot] = threads == null ? -1 : allocated() - allocStart;
+        droppedFrames[slot] = currentDropped;
+        droppedTotal += currentDropped;
+        frames++;
+    }
+
+    /** Frames held, at most CAPACITY. */
+    public int size() { return (int) Math.min(frames, CAPACITY); }
+
+    /** Total frames recorded since start. */
+    public long frameCount() { return frames; }
+
+    /** Frame time of the i-th oldest frame held, i in [0, size()). */
+    public long frameNanos(int i) { return frameNanos[slot(i)]; }
+
+    public long stageNanos(int i, Stage s) { return stageNanos[slot(i) * STAGES.length + s.ordinal()]; }
+
+    /** Bytes the game thread allocated during the i-th oldest frame, or -1 if not measurable. */
+    public long allocatedBytes(int i) { return allocBytes[slot(i)]; }
+
+    /** Frames dropped while the i-th oldest frame held was drawn. */
+    public int droppedFrames(int i) { return droppedFrames[slot(i)]; }
+
+    /** Frames dropped since start. */
+    public long droppedTotal() { return droppedTotal; }
+
+    /** Percentile p (0..100) of frame time over the frames held; 0 if there are none. */
+    public long framePercentile(double p) {
+        int n = size();
+        for (int i = 0; i < n; i++) sorted[i] = frameNanos(i);
+        return percentile(n, p);
+    }
+
+    /** Percentile p (0..100) of one stage's time over the frames held. */
+    public long stagePercentile(Stage s, double p) {
+        int n = size();
+        for (int i = 0; i < n; i++) sorted[i] = stageNanos(i, s);
+        return percentile(n, p);
+    }
+
+    /** Percentile p (0..100) of per-frame allocated bytes over the frames held. */
+    public long allocPercentile(double p) {
+        int n = size();
+        for (int i = 0; i < n; i++) sorted[i] = allocatedBytes(i);
+        return percentile(n, p);
+    }
+
+    /**
+     * Writes the frames held as CSV, oldest first: frame number, frame and stage times in
+     * milliseconds, allocated bytes, dropped frames.
+     */
+    public void writeCsv(Path out) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(out)) {
+            w.write("frame,frame_ms");
+            for (Stage s : STAGES) w.write("," + s.name().toLowerCase(Locale.ROOT) + "_ms");
+            w.write(",alloc_bytes,dropped");
+            w.newLine();
+            int n = size();
+            long first = frames - n;
+            for (int i = 0; i < n; i++) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(first + i).append(',').append(ms(frameNanos(i)));
+                for (Stage s : STAGES) sb.append(',').append(ms(stageNanos(i, s)));
+                sb.append(',').append(allocatedBytes(i)).append(',').append(droppedFrames(i));
+                w.write(sb.toString());
+                w.newLine();
+            }
+        }
+    }
+
+    private int slot(int i) {
+        return (int) ((frames - size() + i) % CAPACITY);
+    }
+
+    private long percentile(int n, double p) {
+        if (n == 0) return 0;
+        Arrays.sort(sorted, 0, n);
+        int k = (int) Math.ceil(p / 100.0 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, k))];
+    }
+
+    private long allocated() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t)) return null;
+        if (!t.isThreadAllocatedMemorySupported()) return null;
+        t.setThreadAllocatedMemoryEnabled(true);
+        return t;
+    }
+}
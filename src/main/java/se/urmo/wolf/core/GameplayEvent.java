@@ -0,0 +1,40 @@
+package se.urmo.wolf.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder mirror of an {@link EventLog} event, committed on the game thread when
+ * -Dwolf.log.jfr takes its level and a recording is running, with or without the log file. The fields are the log's generic slots; the
+ * {@code type} field says what n0..n3 and s0..s2 mean (see {@link EventLog.Type}).
+ */
+@Name("se.urmo.wolf.Gameplay")
+@Label("Gameplay Event")
+@Category("Wolf")
+@Description("AI state changes, shots, hits and doors from the event log")
+final class GameplayEvent extends Event {
+    @Label("Type") String type;
+    @Label("Actor") int actor;
+    @Label("X") double x;
+    @Label("Y") double y;
+    @Label("N0") double n0;
+    @Label("N1") double n1;
+    @Label("N2") double n2;
+    @Label("N3") double n3;
+    @Label("S0") String s0;
+    @Label("S1") String s1;
+    @Label("S2") String s2;
+
+    static void emit(String type, int actor, double x, double y, double n0, double n1, double n2, double n3,
+                     String s0, String s1, String s2) {
+        GameplayEvent e = new GameplayEvent();
+        if (!e.shouldCommit()) return;
+        e.type = type; e.actor = actor; e.x = x; e.y = y;
+        e.n0 = n0; e.n1 = n1; e.n2 = n2; e.n3 = n3;
+        e.s0 = s0; e.s1 = s1; e.s2 = s2;
+        e.commit();
+    }
+}
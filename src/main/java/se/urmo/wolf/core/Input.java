@@ -16,15 +16,20 @@ public class Input extends KeyAdapter {
     }
 
     @Override
-    public void keyPressed(KeyEvent e) {
-        int k = e.getKeyCode() & 0xFF;
+    public void keyPressed(KeyEvent e) { press(e.getKeyCode()); }
+
+    @Override
+    public void keyReleased(KeyEvent e) { release(e.getKeyCode()); }
+
+    /** Same as a key event for keyCode; also lets headless drivers script input. */
+    public void press(int keyCode) {
+        int k = keyCode & 0xFF;
         if (!down[k]) { pressed[k] = true; }
         down[k] = true;
     }
 
-    @Override
-    public void keyReleased(KeyEvent e) {
-        int k = e.getKeyCode() & 0xFF;
+    public void release(int keyCode) {
+        int k = keyCode & 0xFF;
         down[k] = false;
         consumed[k] = false;
     }
@@ -4,6 +4,9 @@ import se.urmo.wolf.Window;
 
 public class StateManager {
     private State current;
+    // Shared by the game loop and the states, which time their own stages into it
+    private final FrameProfiler profiler = new FrameProfiler();
+    private boolean quitting;
 
     public void set(State next) {
         if (current != null) current.onExit();
@@ -14,4 +17,10 @@ public class StateManager {
     public void handleInput(Input input) { if (current != null) current.handleInput(input); }
     public void update(double dt) { if (current != null) current.update(dt); }
     public void render(Window window) { if (current != null) current.render(window); }
+
+    public FrameProfiler profiler() { return profiler; }
+
+    /** Ends the game loop after the current frame. */
+    public void quit() { quitting = true; }
+    public boolean isQuitting() { return quitting; }
 }
\ No newline at end of file
@@ -1,8 +1,7 @@
 package se.urmo.wolf.entities;
 
 import se.urmo.wolf.gfx.DirectionalSprite;
-
-import java.awt.image.BufferedImage;
+import se.urmo.wolf.gfx.Texture;
 
 public abstract class AnimatedSpriteEntity extends SpriteEntity {
     // Animation config
@@ -22,8 +21,8 @@ public abstract class AnimatedSpriteEntity extends SpriteEntity {
     protected double facingY(Player p) { return 0; }
 
     @Override
-    public BufferedImage getFrameImage(Player p, double timeSeconds) {
-        if (dirSprite == null) return super.getFrameImage(p, timeSeconds);
+    public Texture getFrameTexture(Player p, double timeSeconds) {
+        if (dirSprite == null) return super.getFrameTexture(p, timeSeconds);
 
         // Determine direction octant from facing
         double fx = facingX(p), fy = facingY(p);
@@ -38,7 +37,7 @@ public abstract class AnimatedSpriteEntity extends SpriteEntity {
         // Column is direction
         int col = dir;
 
-        BufferedImage f = dirSprite.getFrame(row, col);
-        return f != null ? f : super.getFrameImage(p, timeSeconds);
+        Texture f = dirSprite.texture(row, col);
+        return f != null ? f : super.getFrameTexture(p, timeSeconds);
     }
 }
\ No newline at end of file
@@ -1,10 +1,10 @@
 package se.urmo.wolf.entities;
 
+import se.urmo.wolf.core.EventLog;
 import se.urmo.wolf.world.GameMap;
 import se.urmo.wolf.gfx.DirectionalSprite;
 import se.urmo.wolf.gfx.Texture;
 
-import java.awt.image.BufferedImage;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -32,7 +32,7 @@ public abstract class Enemy extends AnimatedSpriteEntity {
 
     private double deathTime = 0.0;
     private int deathFrameIndex = 0;
-    private BufferedImage deathFinalFrame = null;
+    private Texture deathFinalFrame = null;
 
     protected int fireRow1Based = 7;
     protected int fireStartCol1Based = 1;
@@ -62,12 +62,12 @@ public abstract class Enemy extends AnimatedSpriteEntity {
     public Enemy(double x, double y, Texture fallback) {
         super(x, y, fallback);
         this.spawnX = x; this.spawnY = y;
-        debugLog("spawned at (%.2f, %.2f)", x, y);
+        EventLog.spawn(enemyId, x, y);
     }
     public Enemy(double x, double y, DirectionalSprite ds) {
         super(x, y, ds);
         this.spawnX = x; this.spawnY = y;
-        debugLog("spawned at (%.2f, %.2f)", x, y);
+        EventLog.spawn(enemyId, x, y);
     }
 
     public State getState() { return state; }
@@ -77,6 +77,7 @@ public abstract class Enemy extends AnimatedSpriteEntity {
     public boolean takeDamage(int amount, Player shooterView, double timeSeconds) {
         if (!isAlive()) return false;
         health -= Math.max(1, amount);
+        EventLog.enemyHit(enemyId, x, y, Math.max(0, health), health <= 0);
         markAlert(shooterView.x, shooterView.y, true);
         if (health <= 0) {
             setStateWithLog(State.DYING, "killed");
@@ -101,7 +102,7 @@ public abstract class Enemy extends AnimatedSpriteEntity {
                 if (deathFinalFrame == null && dirSprite != null) {
                     int row0 = deathRow1Based - 1;
                     int col0 = (deathStartCol1Based - 1) + idx;
-                    deathFinalFrame = dirSprite.frame(row0, col0);
+                    deathFinalFrame = dirSprite.texture(row0, col0);
                 }
                 setStateWithLog(State.DEAD, "death anim complete");
             } else {
@@ -120,7 +121,7 @@ public abstract class Enemy extends AnimatedSpriteEntity {
                 fireTime = 0.0;
                 fireFrameIndex = 0;
                 fireCooldown = randBetween(fireIntervalMin, fireIntervalMax);
-                debugLog("fire sequence complete; cooldown=%.2fs", fireCooldown);
+                EventLog.fireDone(enemyId, x, y, fireCooldown);
             } else {
                 fireFrameIndex = Math.min(idx, fireFrames - 1);
             }
@@ -131,7 +132,6 @@ public abstract class Enemy extends AnimatedSpriteEntity {
         double prev = alertTimer;
         if (alertTimer > 0.0) { alertTimer -= dt; if (alertTimer < 0) alertTimer = 0; }
         if (prev > 0.0 && alertTimer == 0.0 && !lastLOS) {
-            debugLog("alert expired; returning to patrol");
             setStateWithLog(State.PATROL, "alert expired");
         }
     }
@@ -154,7 +154,7 @@ public abstract class Enemy extends AnimatedSpriteEntity {
 
         double roll = ThreadLocalRandom.current().nextDouble();
         boolean hit = roll < chance;
-        debugLog("fires at dist=%.2f chance=%.2f roll=%.2f => %s", dist, chance, roll, hit ? "HIT" : "MISS");
+        EventLog.enemyFire(enemyId, x, y, dist, chance, roll, hit);
         if (hit) player.takeDamage(shotDamage);
         return true;
     }
@@ -187,24 +187,14 @@ public abstract class Enemy extends AnimatedSpriteEntity {
         double facingDot = ndx * dirX + ndy * dirY;
         if (facingDot < fovCos) { handleLOS(false, p); return false; }
 
-        double stepX = dx / len, stepY = dy / len;
-        double rx = x, ry = y;
-        int steps = (int)Math.ceil(len * 4.0);
-        for (int i=0;i<steps;i++) {
-            rx += stepX * 0.25; ry += stepY * 0.25;
-            if (map.isSolid((int)rx, (int)ry)) { handleLOS(false, p); return false; }
-        }
+        if (!map.hasLineOfSight(x, y, p.x, p.y)) { handleLOS(false, p); return false; }
         handleLOS(true, p);
         markAlert(p.x, p.y, false);
         return true;
     }
 
     private void handleLOS(boolean hasLOS, Player p) {
-        if (hasLOS && !lastLOS) {
-            debugLog("acquired LOS on player (%.2f, %.2f)", p.x, p.y);
-        } else if (!hasLOS && lastLOS) {
-            debugLog("lost LOS; memory=%.2fs", alertTimer);
-        }
+        if (hasLOS != lastLOS) EventLog.los(enemyId, x, y, hasLOS, p.x, p.y, alertTimer);
         lastLOS = hasLOS;
     }
 
@@ -217,33 +207,29 @@ public abstract class Enemy extends AnimatedSpriteEntity {
     @Override protected double facingY(Player p) { return dirY; }
 
     @Override
-    public BufferedImage getFrameImage(Player p, double timeSeconds) {
+    public Texture getFrameTexture(Player p, double timeSeconds) {
         if (state == State.DEAD && deathFinalFrame != null) return deathFinalFrame;
         if (state == State.DYING) {
-            if (dirSprite == null) return texture != null ? texture.img : null;
+            if (dirSprite == null) return texture;
             int row0 = deathRow1Based - 1;
             int col0 = (deathStartCol1Based - 1) + Math.max(0, Math.min(deathFrames - 1, deathFrameIndex));
-            return dirSprite.frame(row0, col0);
+            return dirSprite.texture(row0, col0);
         }
         if (firing && dirSprite != null) {
             int row0 = fireRow1Based - 1;
             int col0 = (fireStartCol1Based - 1) + Math.max(0, Math.min(fireFrames - 1, fireFrameIndex));
-            return dirSprite.frame(row0, col0);
+            return dirSprite.texture(row0, col0);
         }
-        return super.getFrameImage(p, timeSeconds);
+        return super.getFrameTexture(p, timeSeconds);
     }
 
     protected void setStateWithLog(State newState, String reason) {
         if (this.state != newState) {
-            debugLog("state %s -> %s (%s)", this.state, newState, reason);
+            EventLog.enemyState(enemyId, x, y, this.state, newState, reason);
             this.state = newState;
         }
     }
 
-    protected void debugLog(String fmt, Object... args) {
-        System.out.printf("[Guard#%d] %s%n", enemyId, String.format(fmt, args));
-    }
-
     private static double randBetween(double a, double b) {
         if (b < a) { double t = a; a = b; b = t; }
         return ThreadLocalRandom.current().nextDouble(a, b);
@@ -1,5 +1,6 @@
 package se.urmo.wolf.entities;
 
+import se.urmo.wolf.core.EventLog;
 import se.urmo.wolf.world.GameMap;
 import se.urmo.wolf.gfx.DirectionalSprite;
 
@@ -95,14 +96,14 @@ public class Guard extends Enemy {
             bx = right + 0.5; by = sy + 0.5;
             dirSign = +1;
             dirX = 1; dirY = 0;
-            debugLog("patrol segment discovered: H (%.2f,%.2f) <-> (%.2f,%.2f)", ax, ay, bx, by);
+            EventLog.patrolSegment(enemyId, x, y, "H", ax, ay, bx, by);
         } else {
             patrolAxis = Axis.V;
             ax = sx + 0.5; ay = up + 0.5;
             bx = sx + 0.5; by = down + 0.5;
             dirSign = +1;
             dirX = 0; dirY = 1;
-            debugLog("patrol segment discovered: V (%.2f,%.2f) <-> (%.2f,%.2f)", ax, ay, bx, by);
+            EventLog.patrolSegment(enemyId, x, y, "V", ax, ay, bx, by);
         }
         reattachToSegment("initial snap");
     }
@@ -122,8 +123,7 @@ public class Guard extends Enemy {
             dirSign = (dB < dA) ? +1 : -1;
             dirX = 0; dirY = dirSign;
         }
-        debugLog("reattach to segment (%s): (%.2f,%.2f) -> (%.2f,%.2f), dir=%s",
-                reason, oldX, oldY, x, y, dirSign > 0 ? "+B" : "-A");
+        EventLog.patrolReattach(enemyId, x, y, oldX, oldY, reason, dirSign > 0 ? "+B" : "-A");
     }
 
     private boolean withinFireDistance(Player p) {
@@ -154,16 +154,16 @@ public class Guard extends Enemy {
             double moved = Math.abs(x - oldX);
             if (moved < step * 0.25) {
                 dirSign *= -1; dirX = dirSign;
-                debugLog("patrol blocked on H; flip dir -> %s", dirSign > 0 ? "+B" : "-A");
+                EventLog.patrolFlip(enemyId, x, y, "blocked H", dirSign > 0 ? "+B" : "-A");
                 flipped = true;
             }
             double minX = Math.min(ax, bx), maxX = Math.max(ax, bx);
             if (x <= minX + EPS) {
                 x = minX;
-                if (!flipped && dirSign < 0) { dirSign = +1; dirX = dirSign; debugLog("patrol H hit A-end; flip dir -> +B"); }
+                if (!flipped && dirSign < 0) { dirSign = +1; dirX = dirSign; EventLog.patrolFlip(enemyId, x, y, "H A-end", "+B"); }
             } else if (x >= maxX - EPS) {
                 x = maxX;
-                if (!flipped && dirSign > 0) { dirSign = -1; dirX = dirSign; debugLog("patrol H hit B-end; flip dir -> -A"); }
+                if (!flipped && dirSign > 0) { dirSign = -1; dirX = dirSign; EventLog.patrolFlip(enemyId, x, y, "H B-end", "-A"); }
             }
         } else {
             x = ax; dirX = 0; dirY = dirSign;
@@ -172,16 +172,16 @@ public class Guard extends Enemy {
             double moved = Math.abs(y - oldY);
             if (moved < step * 0.25) {
                 dirSign *= -1; dirY = dirSign;
-                debugLog("patrol blocked on V; flip dir -> %s", dirSign > 0 ? "+B" : "-A");
+                EventLog.patrolFlip(enemyId, x, y, "blocked V", dirSign > 0 ? "+B" : "-A");
                 flipped = true;
             }
             double minY = Math.min(ay, by), maxY = Math.max(ay, by);
             if (y <= minY + EPS) {
                 y = minY;
-                if (!flipped && dirSign < 0) { dirSign = +1; dirY = dirSign; debugLog("patrol V hit A-end; flip dir -> +B"); }
+                if (!flipped && dirSign < 0) { dirSign = +1; dirY = dirSign; EventLog.patrolFlip(enemyId, x, y, "V A-end", "+B"); }
             } else if (y >= maxY - EPS) {
                 y = maxY;
-                if (!flipped && dirSign > 0) { dirSign = -1; dirY = dirSign; debugLog("patrol V hit B-end; flip dir -> -A"); }
+                if (!flipped && dirSign > 0) { dirSign = -1; dirY = dirSign; EventLog.patrolFlip(enemyId, x, y, "V B-end", "-A"); }
             }
         }
     }
@@ -192,7 +192,7 @@ public class Guard extends Enemy {
         double oldX = x, oldY = y;
         tryMove(map, nx, ny);
         double moved = Math.hypot(x-oldX, y-oldY);
-        if (moved < step * 0.25) { dirX=-dirX; dirY=-dirY; debugLog("fallback patrol turn-around at (%.2f, %.2f)", x, y); }
+        if (moved < step * 0.25) { dirX=-dirX; dirY=-dirY; EventLog.patrolFlip(enemyId, x, y, "fallback blocked", null); }
     }
 
     private void faceTowards(double tx, double ty) {
@@ -19,7 +19,12 @@ public class SpriteEntity {
         this.x = x; this.y = y; this.dirSprite = ds;
     }
 
+    public Texture getFrameTexture(Player p, double timeSeconds) {
+        return texture;
+    }
+
     public BufferedImage getFrameImage(Player p, double timeSeconds) {
-        return texture != null ? texture.img : null;
+        Texture t = getFrameTexture(p, timeSeconds);
+        return t != null ? t.img : null;
     }
 }
\ No newline at end of file
@@ -5,8 +5,10 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 public final class Assets {
-    public static Texture WALL;
-    public static Texture DOOR;
+    /** All 64 tiles of walls.png, indexed by texture id (sheet row * 8 + col), for the raster path. */
+    public static TextureAtlas WALLS;
+    /** The same tiles as Textures, for the getRGB reference path. */
+    public static Texture[] WALL_TILES;
     public static Texture FLOOR;
     public static Texture SKY;
 
@@ -23,10 +25,13 @@ public final class Assets {
         try {
             // walls.png: 64x64 tiles, 8x8 grid, 1px outer padding and 1px spacing
             BufferedImage wallsSheet = ImageIO.read(Assets.class.getResource("/textures/walls.png"));
-            BufferedImage wallTile = sliceWithSpacing(wallsSheet, 0, 0, 64, 64, 1, 1);
-            BufferedImage doorTile = sliceWithSpacing(wallsSheet, 0, 7, 64, 64, 1, 1);
-            WALL = new Texture(wallTile);
-            DOOR = new Texture(doorTile);
+            BufferedImage[] wallTiles = new BufferedImage[64];
+            WALL_TILES = new Texture[wallTiles.length];
+            for (int id = 0; id < wallTiles.length; id++) {
+                wallTiles[id] = sliceWithSpacing(wallsSheet, id % 8, id / 8, 64, 64, 1, 1);
+                WALL_TILES[id] = new Texture(wallTiles[id]);
+            }
+            WALLS = new TextureAtlas(wallTiles);
 
             // floor/sky
             BufferedImage floorImg = ImageIO.read(Assets.class.getResource("/textures/floor.png"));
@@ -5,7 +5,7 @@ import java.awt.image.BufferedImage;
 public class DirectionalSprite {
     private final BufferedImage sheet;
     private final int frameW, frameH, rows, cols, spacing;
-    private final BufferedImage[][] frames;
+    private final Texture[][] frames;
 
     public DirectionalSprite(BufferedImage sheet, int frameW, int frameH, int rows, int cols, int spacing) {
         this.sheet = sheet;
@@ -14,7 +14,7 @@ public class DirectionalSprite {
         this.rows = rows;
         this.cols = cols;
         this.spacing = spacing;
-        this.frames = new BufferedImage[rows][cols];
+        this.frames = new Texture[rows][cols];
         extract();
     }
 
@@ -24,15 +24,21 @@ public class DirectionalSprite {
                 int x = c * (frameW + spacing);
                 int y = r * (frameH + spacing);
                 if (x + frameW <= sheet.getWidth() && y + frameH <= sheet.getHeight()) {
-                    frames[r][c] = sheet.getSubimage(x, y, frameW, frameH);
+                    frames[r][c] = new Texture(sheet.getSubimage(x, y, frameW, frameH));
                 } else {
-                    frames[r][c] = new BufferedImage(frameW, frameH, BufferedImage.TYPE_INT_ARGB);
+                    frames[r][c] = new Texture(new BufferedImage(frameW, frameH, BufferedImage.TYPE_INT_ARGB));
                 }
             }
         }
     }
 
     public BufferedImage getFrame(int row, int col) {
+        Texture t = texture(row, col);
+        return t != null ? t.img : null;
+    }
+
+    /** Frame with its packed texels, for the raster path. */
+    public Texture texture(int row, int col) {
         if (row < 0 || row >= rows || col < 0 || col >= cols) return null;
         return frames[row][col];
     }
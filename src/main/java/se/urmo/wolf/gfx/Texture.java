@@ -1,20 +1,121 @@
 package se.urmo.wolf.gfx;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 public class Texture {
+    /** Y-side darkening factor (out of 255) baked into the shaded chains of a {@link TextureAtlas}. */
+    public static final int SIDE_SHADE = 160;
+
+    /** Texels with alpha below this are holes; the sprite pass never draws them. */
+    public static final int ALPHA_CUTOFF = 10;
+
     public final BufferedImage img;
     public final int w, h;
+    /** Packed ARGB texels, row-major (index = y * w + x). Converted once at load; used for row-wise sampling. */
+    public final int[] pixels;
+
+    /** Texels in column-major order (index = x * h + y), so a vertical strip reads contiguous memory. */
+    private final int[] cols;
+
+    /**
+     * Opaque runs of the level-0 columns. Column x owns the (first, end) row pairs in
+     * spans[spanIndex[x] .. spanIndex[x + 1]); a fully transparent column has none.
+     */
+    public final int[] spanIndex;
+    public final int[] spans;
 
     public Texture(BufferedImage img) {
         this.img = img;
         this.w = img.getWidth();
         this.h = img.getHeight();
+        this.pixels = img.getRGB(0, 0, w, h, null, 0, w);
+        this.cols = transpose(pixels, w, h);
+        this.spanIndex = new int[w + 1];
+        this.spans = buildSpans(cols, w, h, spanIndex);
     }
 
+    /** Texels in column-major order (index = x * h + y). */
+    public int[] columns() { return cols; }
+
     public int sample(int x, int y) {
         x &= (w - 1);
         y &= (h - 1);
-        return img.getRGB(x, y) & 0xFFFFFF;
+        return pixels[y * w + x] & 0xFFFFFF;
+    }
+
+    /** Box-filtered mip chain of a row-major w x h image; level k is max(1, w >> k) x max(1, h >> k). */
+    static int[][] buildMips(int[] base, int w, int h) {
+        int levels = 1;
+        while ((w >> levels) > 0 || (h >> levels) > 0) levels++;
+        int[][] chain = new int[levels][];
+        chain[0] = base;
+        int pw = w, ph = h;
+        for (int k = 1; k < levels; k++) {
+            int mw = Math.max(1, pw >> 1), mh = Math.max(1, ph >> 1);
+            int[] src = chain[k - 1], dst = new int[mw * mh];
+            for (int y = 0; y < mh; y++) {
+                int y0 = Math.min(ph - 1, y * 2), y1 = Math.min(ph - 1, y * 2 + 1);
+                for (int x = 0; x < mw; x++) {
+                    int x0 = Math.min(pw - 1, x * 2), x1 = Math.min(pw - 1, x * 2 + 1);
+                    dst[y * mw + x] = average(src[y0 * pw + x0], src[y0 * pw + x1],
+                                              src[y1 * pw + x0], src[y1 * pw + x1]);
+                }
+            }
+            chain[k] = dst;
+            pw = mw; ph = mh;
+        }
+        return chain;
+    }
+
+    // Box filter per channel (alpha included)
+    private static int average(int c0, int c1, int c2, int c3) {
+        int out = 0;
+        for (int s = 0; s < 32; s += 8) {
+            int sum = ((c0 >>> s) & 0xFF) + ((c1 >>> s) & 0xFF) + ((c2 >>> s) & 0xFF) + ((c3 >>> s) & 0xFF);
+            out |= ((sum + 2) >> 2) << s;
+        }
+        return out;
+    }
+
+    private static int[] buildSpans(int[] cols, int w, int h, int[] index) {
+        int[] out = new int[16];
+        int n = 0;
+        for (int x = 0; x < w; x++) {
+            index[x] = n;
+            int base = x * h;
+            int y = 0;
+            while (y < h) {
+                while (y < h && (cols[base + y] >>> 24) < ALPHA_CUTOFF) y++;
+                if (y == h) break;
+                int first = y;
+                while (y < h && (cols[base + y] >>> 24) >= ALPHA_CUTOFF) y++;
+                if (n + 2 > out.length) out = Arrays.copyOf(out, out.length * 2);
+                out[n++] = first;
+                out[n++] = y;
+            }
+        }
+        index[w] = n;
+        return Arrays.copyOf(out, n);
+    }
+
+    static int[] transpose(int[] rowMajor, int w, int h) {
+        int[] cols = new int[rowMajor.length];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) cols[x * h + y] = rowMajor[y * w + x];
+        }
+        return cols;
+    }
+
+    static int[] shade(int[] src, int factor) {
+        int[] dst = new int[src.length];
+        for (int i = 0; i < src.length; i++) {
+            int c = src[i];
+            int r = (((c >> 16) & 0xFF) * factor) / 255;
+            int g = (((c >> 8) & 0xFF) * factor) / 255;
+            int b = ((c & 0xFF) * factor) / 255;
+            dst[i] = (c & 0xFF000000) | (r << 16) | (g << 8) | b;
+        }
+        return dst;
     }
-}
\ No newline at end of file
+}
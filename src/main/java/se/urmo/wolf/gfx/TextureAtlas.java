@@ -0,0 +1,73 @@
+package se.urmo.wolf.gfx;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Every wall tile of a sheet packed into one int[]. Each tile owns two consecutive chains: its
+ * column-major mip levels (level k is (tileSize >> k) squared), then the same levels pre-darkened by
+ * {@link Texture#SIDE_SHADE} for Y-side hits. A wall column finds its texels by arithmetic on the
+ * tile id instead of going through a Texture object.
+ */
+public final class TextureAtlas {
+    /** Tile width and height; tiles are square and a power of two. */
+    public final int tileSize;
+    public final int count;
+    public final int mipLevels;
+    /** Ints in one chain (all mip levels of one tile). */
+    public final int chainSize;
+    public final int[] texels;
+
+    private final int[] mipOffset;
+
+    public TextureAtlas(BufferedImage[] tiles) {
+        this.count = tiles.length;
+        this.tileSize = tiles[0].getWidth();
+        if (Integer.bitCount(tileSize) != 1) throw new IllegalArgumentException("Tile size must be a power of two: " + tileSize);
+
+        int levels = 1;
+        while ((tileSize >> levels) > 0) levels++;
+        this.mipLevels = levels;
+        this.mipOffset = new int[levels];
+        int size = 0;
+        for (int k = 0; k < levels; k++) {
+            mipOffset[k] = size;
+            size += mipSize(k) * mipSize(k);
+        }
+        this.chainSize = size;
+
+        this.texels = new int[count * 2 * chainSize];
+        for (int id = 0; id < count; id++) {
+            BufferedImage img = tiles[id];
+            if (img.getWidth() != tileSize || img.getHeight() != tileSize) {
+                throw new IllegalArgumentException("Tile " + id + " is not " + tileSize + "x" + tileSize);
+            }
+            int[][] mips = Texture.buildMips(img.getRGB(0, 0, tileSize, tileSize, null, 0, tileSize), tileSize, tileSize);
+            for (int k = 0; k < levels; k++) {
+                int[] cols = Texture.transpose(mips[k], mipSize(k), mipSize(k));
+                System.arraycopy(cols, 0, texels, chainOffset(id, false) + mipOffset[k], cols.length);
+                int[] shaded = Texture.shade(cols, Texture.SIDE_SHADE);
+                System.arraycopy(shaded, 0, texels, chainOffset(id, true) + mipOffset[k], shaded.length);
+            }
+        }
+    }
+
+    /** Start of a tile's chain; the shaded chain directly follows the plain one. */
+    public int chainOffset(int id, boolean shaded) {
+        return (id * 2 + (shaded ? 1 : 0)) * chainSize;
+    }
+
+    /** Offset of mip level k within a chain. */
+    public int mipOffset(int level) { return mipOffset[level]; }
+
+    /** Width and height of mip level k. */
+    public int mipSize(int level) { return Math.max(1, tileSize >> level); }
+
+    /** floor(log2(texels per pixel)) for a column of lineHeight pixels, clamped to the chain. */
+    public int mipLevel(int lineHeight) {
+        int last = mipLevels - 1;
+        if (lineHeight < 1) return last;
+        int ratio = tileSize / lineHeight;
+        if (ratio < 2) return 0;
+        return Math.min(last, 31 - Integer.numberOfLeadingZeros(ratio));
+    }
+}
@@ -0,0 +1,93 @@
+package se.urmo.wolf.render;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a [0, total) range into contiguous bands and runs them on a shared ForkJoin pool, with the
+ * calling thread taking the first band. Band tasks are allocated once and reinitialized every frame,
+ * so dispatching is garbage free.
+ */
+final class BandScheduler {
+    interface Body { void run(int from, int to); }
+
+    // The caller works too, so the pool only needs the remaining cores
+    private static final ForkJoinPool POOL =
+            new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    // isDone polls before the waiting caller starts yielding its core
+    private static final int SPIN_LIMIT = 1 << 10;
+
+    private final Band[] bands;
+
+    BandScheduler(int maxBands) {
+        bands = new Band[Math.max(1, maxBands)];
+        for (int i = 0; i < bands.length; i++) bands[i] = new Band();
+    }
+
+    /** Threads that work on a dispatch: the pool plus the caller. */
+    static int parallelism() {
+        return Runtime.getRuntime().availableProcessors() > 1 ? POOL.getParallelism() + 1 : 1;
+    }
+
+    /**
+     * Runs body over [0, total) in up to bandCount bands. Band edges are rounded to multiples of
+     * align so that neighbouring bands never write into the same cache line. Blocks until done.
+     */
+    void run(Body body, int total, int bandCount, int align) {
+        int n = Math.max(1, Math.min(bandCount, bands.length));
+        int size = (total + n - 1) / n;
+        if (align > 1) size = ((size + align - 1) / align) * align;
+        int used = 0;
+        for (int from = 0; from < total && used < n; from += size, used++) {
+            Band b = bands[used];
+            b.body = body;
+            b.from = from;
+            b.to = Math.min(total, from + size);
+        }
+        if (used <= 1) {
+            body.run(0, total);
+            return;
+        }
+        // Pushed straight to the pool: fork() from a non-worker thread would land in the common pool
+        for (int i = 1; i < used; i++) {
+            bands[i].reinitialize();
+            POOL.execute(bands[i]);
+        }
+        try {
+            bands[0].runBand();
+        } finally {
+            // Always wait, so no band is still running when the tasks are reinitialized next frame
+            for (int i = 1; i < used; i++) await(bands[i]);
+        }
+        for (int i = 1; i < used; i++) {
+            Throwable t = bands[i].getException();
+            if (t instanceof RuntimeException re) throw re;
+            if (t instanceof Error e) throw e;
+        }
+    }
+
+    /**
+     * Waits for a band without blocking: a blocking join queues a wait node per call, which would be
+     * the only garbage left in the frame loop. Bands take well under a millisecond, so spin briefly,
+     * then yield so a worker sharing the caller's core can finish. Failed bands count as done too.
+     */
+    private static void await(Band b) {
+        for (int spins = 0; !b.isDone(); spins++) {
+            if (spins < SPIN_LIMIT) Thread.onSpinWait(); else Thread.yield();
+        }
+    }
+
+    // RecursiveAction is Serializable; bands never are, so the body isn't part of the state
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        transient Body body;
+        int from, to;
+
+        void runBand() { body.run(from, to); }
+
+        @Override
+        protected void compute() { runBand(); }
+    }
+}
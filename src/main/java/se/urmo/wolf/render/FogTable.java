@@ -0,0 +1,80 @@
+package se.urmo.wolf.render;
+
+import java.util.Arrays;
+
+/**
+ * Distance fog as lookup tables. Distance is quantized to a light level once per wall column,
+ * floor row or sprite. The shade table is indexed by channel value and level; its rows are
+ * pre-shifted into channel position and already blended toward the fog color, so shading a texel
+ * is three reads OR'ed together. Level 0 means no fog.
+ */
+final class FogTable {
+    static final int LEVELS = 32;
+
+    // Light level by distance in 1/STEPS_PER_TILE tile steps, so level() is a table read, not an exp
+    private static final int STEPS_PER_TILE = 16, MAX_TILES = 64;
+
+    private final int[] red = new int[LEVELS * 256];
+    private final int[] green = new int[LEVELS * 256];
+    private final int[] blue = new int[LEVELS * 256];
+    private final byte[] levelByDist = new byte[STEPS_PER_TILE * MAX_TILES + 1];
+    private double density;
+
+    FogTable(double density, int fogRgb) {
+        configure(density, fogRgb);
+    }
+
+    double density() { return density; }
+
+    /** Rebuilds the tables; not safe while a frame is being drawn. */
+    void configure(double density, int fogRgb) {
+        this.density = Math.max(0.0, density);
+        for (int i = 0; i < levelByDist.length; i++) {
+            double a = 1.0 - Math.exp(-this.density * i / STEPS_PER_TILE);   // fraction of fog color
+            levelByDist[i] = (byte) (int) (a * (LEVELS - 1) + 0.5);
+        }
+        int fr = (fogRgb >> 16) & 0xFF, fg = (fogRgb >> 8) & 0xFF, fb = fogRgb & 0xFF;
+        for (int level = 0; level < LEVELS; level++) {
+            double a = level / (double) (LEVELS - 1);
+            int o = level << 8;
+            for (int c = 0; c < 256; c++) {
+                red[o + c]   = (int) Math.round(c + (fr - c) * a) << 16;
+                green[o + c] = (int) Math.round(c + (fg - c) * a) << 8;
+                blue[o + c]  = (int) Math.round(c + (fb - c) * a);
+            }
+        }
+    }
+
+    /** Light level for something dist tiles away; 0 when fog is off or the distance is tiny. */
+    int level(double dist) {
+        int i = (int) (dist * STEPS_PER_TILE);
+        if (i >= levelByDist.length) i = levelByDist.length - 1; else if (i < 0) i = 0;
+        return levelByDist[i];
+    }
+
+    int apply(int argb, int level) {
+        int o = level << 8;
+        return (argb & 0xFF000000) | red[o + ((argb >>> 16) & 0xFF)]
+                | green[o + ((argb >>> 8) & 0xFF)] | blue[o + (argb & 0xFF)];
+    }
+
+    /**
+     * The texels run through every light level, indexed [level]; level 0 is texels itself. With fog
+     * off every level is texels. Used to pre-fog the floor so its rows only pick an array per row.
+     */
+    int[][] levels(int[] texels) {
+        int[][] out = new int[LEVELS][];
+        out[0] = texels;
+        if (density <= 0.0) {
+            // level() only ever returns 0; don't allocate copies that are never read
+            Arrays.fill(out, texels);
+            return out;
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            int[] t = new int[texels.length];
+            for (int i = 0; i < t.length; i++) t[i] = apply(texels[i], level);
+            out[level] = t;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,91 @@
+package se.urmo.wolf.render;
+
+import se.urmo.wolf.gfx.TextureAtlas;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The world textures run through one fog setting, a copy per light level, so wall columns and floor
+ * rows pick an array and shade nothing per pixel. Wall tiles are packed in the first time a map
+ * shows them: a map pays for the tiles it uses, a streamed map for the ones its loaded chunks use.
+ * With fog off every level is the texture itself and nothing is copied.
+ *
+ * <p>Kept per atlas and setting for the life of the game, so a respawn, a new game or a fog toggle
+ * back to a setting seen before costs nothing.
+ */
+final class FoggedTextures {
+    // Settings kept; F5 flips between one and fog off
+    private static final int KEEP = 2;
+    private static final Map<Key, FoggedTextures> CACHE = new LinkedHashMap<>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, FoggedTextures> eldest) { return size() > KEEP; }
+    };
+
+    private record Key(TextureAtlas atlas, int[] floor, double density, int fogRgb) {}
+
+    private final TextureAtlas atlas;
+    private final FogTable fog;
+    private final boolean off;
+    private int slots;
+
+    /** Atlas tile id -> its slot in walls, or -1 until packed. */
+    final int[] slot;
+    /**
+     * Wall chains by [level], tile slot i at chain offset i; in atlas layout, so the atlas's offsets
+     * apply. Replaced rather than changed when tiles are added, so a frame holding it is unaffected.
+     */
+    volatile int[][] walls;
+    /** Floor texels by [level]; null without a floor texture. */
+    final int[][] floor;
+
+    private FoggedTextures(TextureAtlas atlas, int[] floorTexels, double density, int fogRgb) {
+        this.atlas = atlas;
+        this.fog = new FogTable(density, fogRgb);
+        this.off = fog.density() <= 0.0;
+        this.slot = new int[atlas.count];
+        if (off) {
+            for (int id = 0; id < atlas.count; id++) slot[id] = id;
+            int[][] all = new int[FogTable.LEVELS][];
+            Arrays.fill(all, atlas.texels);
+            walls = all;
+        } else {
+            Arrays.fill(slot, -1);
+        }
+        this.floor = floorTexels != null ? fog.levels(floorTexels) : null;
+    }
+
+    /** The textures for a setting, built on first use. */
+    static synchronized FoggedTextures of(TextureAtlas atlas, int[] floorTexels, double density, int fogRgb) {
+        return CACHE.computeIfAbsent(new Key(atlas, floorTexels, Math.max(0.0, density), fogRgb),
+                k -> new FoggedTextures(k.atlas, k.floor, k.density, k.fogRgb));
+    }
+
+    /** Packs the tiles flagged in used (by atlas id) that aren't yet; nothing to do once they are. */
+    synchronized void ensure(boolean[] used) {
+        if (off) return;
+        int added = 0;
+        for (int id = 0; id < atlas.count; id++) if (used[id] && slot[id] < 0) added++;
+        if (added == 0) return;
+
+        int chain = 2 * atlas.chainSize;   // plain and Y-side shaded chains of a tile
+        int size = (slots + added) * chain;
+        int[][] grown = new int[FogTable.LEVELS][];
+        for (int level = 0; level < grown.length; level++) {
+            grown[level] = walls == null ? new int[size] : Arrays.copyOf(walls[level], size);
+        }
+        int[] texels = atlas.texels;
+        for (int id = 0; id < atlas.count; id++) {
+            if (!used[id] || slot[id] >= 0) continue;
+            int src = atlas.chainOffset(id, false), dst = slots * chain;
+            System.arraycopy(texels, src, grown[0], dst, chain);
+            for (int level = 1; level < grown.length; level++) {
+                int[] t = grown[level];
+                for (int i = 0; i < chain; i++) t[dst + i] = fog.apply(texels[src + i], level);
+            }
+            slot[id] = slots++;
+        }
+        walls = grown;
+    }
+}
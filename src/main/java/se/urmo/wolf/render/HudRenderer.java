@@ -2,19 +2,50 @@ package se.urmo.wolf.render;
 
 import se.urmo.wolf.Game;
 import se.urmo.wolf.entities.Player;
+import se.urmo.wolf.gfx.Blit;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 
+/**
+ * Text HUD (health/lives). Nothing is allocated per frame: the translucent panel is drawn once into
+ * an image and blitted with {@link Blit}, and the strings are rebuilt only when the numbers change.
+ */
 public final class HudRenderer {
+    private static final Font FONT = new Font("SansSerif", Font.BOLD, 14);
+    private static final Color PANEL = new Color(0, 0, 0, 140);
+    private static final int PANEL_W = 200, PANEL_H = 26;
 
-    public void render(Graphics2D g2, Player player) {
+    private BufferedImage panel;
+    private int shownHealth = -1, shownLives = -1;
+    private String healthText, livesText;
+
+    /** fb is the image g2 draws into. */
+    public void render(Graphics2D g2, BufferedImage fb, Player player) {
         // Basic text HUD (health/lives). Extend as you like.
-        g2.setFont(new Font("SansSerif", Font.BOLD, 14));
-        g2.setColor(new Color(0, 0, 0, 140));
-        g2.fillRoundRect(8, Game.HEIGHT - 34, 200, 26, 10, 10);
+        if (panel == null) panel = panel();
+        Blit.over(fb, panel, 8, Game.HEIGHT - 34);
 
+        if (player.getHealth() != shownHealth) {
+            shownHealth = player.getHealth();
+            healthText = "Health: " + shownHealth + "%";
+        }
+        if (player.getLives() != shownLives) {
+            shownLives = player.getLives();
+            livesText = "Lives: " + shownLives;
+        }
+        g2.setFont(FONT);
         g2.setColor(Color.white);
-        g2.drawString("Health: " + player.getHealth() + "%", 18, Game.HEIGHT - 17);
-        g2.drawString("Lives: " + player.getLives(), 120, Game.HEIGHT - 17);
+        g2.drawString(healthText, 18, Game.HEIGHT - 17);
+        g2.drawString(livesText, 120, Game.HEIGHT - 17);
+    }
+
+    private static BufferedImage panel() {
+        BufferedImage img = new BufferedImage(PANEL_W + 1, PANEL_H + 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(PANEL);
+        g.fillRoundRect(0, 0, PANEL_W, PANEL_H, 10, 10);
+        g.dispose();
+        return img;
     }
 }
@@ -3,71 +3,115 @@ package se.urmo.wolf.render;
 import se.urmo.wolf.entities.Enemy;
 import se.urmo.wolf.entities.SpriteEntity;
 import se.urmo.wolf.entities.Player;
+import se.urmo.wolf.gfx.Blit;
 import se.urmo.wolf.world.GameMap;
+import se.urmo.wolf.world.StreamingGameMap;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.List;
 
+/**
+ * Minimap drawn from a cached image of the whole map at one pixel per tile. The image is built once
+ * per map; afterwards only doors whose open state moved are repainted, and each frame just blits
+ * the visible window scaled up and draws the markers on top. A {@link StreamingGameMap} is cached
+ * as a window around the player instead, repainted when the player moves off its middle or the map
+ * loads chunks, and the full view shows that window. The translucent panel, its border and
+ * the player dot are pre-rendered too. Images go through {@link Blit} into the framebuffer, since
+ * Java2D allocates on every drawImage and translucent shape fill.
+ */
 public final class MinimapRenderer {
+    private static final Color PANEL = Color.black;
+    private static final Color BORDER = new Color(255, 255, 255, 120);
+    private static final Color PLAYER = Color.green;
+    private static final Color ENEMY = Color.red;
+    private static final AlphaComposite PANEL_ALPHA = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.6f);
+
+    private static final int FLOOR = 0xFF3C3C3C;   // 60, 60, 60
+    private static final int WALL  = 0xFFC8C8C8;   // 200, 200, 200
+    private static final int DOOR  = 0xFF8CB4DC;   // 140, 180, 220
+    private static final int OTHER = 0xFF646464;   // 100, 100, 100
+    private static final Color WALL_COLOR = new Color(WALL);
+
+    // Door shades between closed and open; progress is quantized so a sliding door repaints a few times
+    private static final int DOOR_STEPS = 8;
+    private static final int[] DOOR_SHADES = new int[DOOR_STEPS + 1];
+    static {
+        for (int i = 0; i <= DOOR_STEPS; i++) DOOR_SHADES[i] = lerp(DOOR, FLOOR, i / (double) DOOR_STEPS);
+    }
+
+    private static final BufferedImage PLAYER_DOT = dot(PLAYER, 6);
+
+    private int panelSize = -1;
+    private BufferedImage panel, border;   // drawn at (x - 2, y - 2) for a sizePx square
+
+    // Tiles cached around the player for a streamed map; moved once it drifts a quarter off center
+    private static final int WINDOW = 256;
+
+    private GameMap cachedMap;
+    private BufferedImage base;
+    private int[] basePixels;
+    private int baseX, baseY, baseW, baseH;   // the map tiles the image covers
+    private long cachedLoads;                 // chunk loads of a streamed map when it was last painted
+    private int[] doorStep;   // shade index last painted for each door, by GameMap door index
 
     // Draw a cropped, zoomed minimap centered around the player.
     public void render(Graphics2D g2,
+                       BufferedImage fb,      // the image g2 draws into
                        GameMap map,
                        Player player,
                        List<SpriteEntity> sprites,
                        int x, int y,          // top-left screen position
                        int sizePx,            // square size in pixels, e.g., 160
                        int radiusTiles) {     // how many tiles from player to show (span = 2*radius + 1)
-
-        // Backing panel
-        Composite oldComp = g2.getComposite();
-        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.6f));
-        g2.setColor(Color.black);
-        g2.fillRoundRect(x - 2, y - 2, sizePx + 4, sizePx + 4, 10, 10);
-        g2.setComposite(oldComp);
-
-        int mw = map.w, mh = map.h;
         int span = radiusTiles * 2 + 1;
 
         int centerX = (int) Math.floor(player.x);
         int centerY = (int) Math.floor(player.y);
 
-        int startX = Math.max(0, Math.min(mw - span, centerX - radiusTiles));
-        int startY = Math.max(0, Math.min(mh - span, centerY - radiusTiles));
+        int startX = Math.max(0, Math.min(map.w - span, centerX - radiusTiles));
+        int startY = Math.max(0, Math.min(map.h - span, centerY - radiusTiles));
+
+        draw(g2, fb, map, player, sprites, x, y, sizePx, startX, startY, span);
+    }
 
+    /** The whole map fitted into the square. */
+    public void renderFull(Graphics2D g2, BufferedImage fb, GameMap map, Player player, List<SpriteEntity> sprites,
+                           int x, int y, int sizePx) {
+        refresh(map, player);
+        draw(g2, fb, map, player, sprites, x, y, sizePx, baseX, baseY, Math.max(baseW, baseH));
+    }
+
+    private void draw(Graphics2D g2, BufferedImage fb, GameMap map, Player player, List<SpriteEntity> sprites,
+                      int x, int y, int sizePx, int startX, int startY, int span) {
+        // Backing panel
+        if (sizePx != panelSize) buildPanel(sizePx);
+        Blit.over(fb, panel, x - 2, y - 2);
+
+        refresh(map, player);
         double s = (double) sizePx / span;
 
-        // Tiles
-        for (int my = 0; my < span; my++) {
-            for (int mx = 0; mx < span; mx++) {
-                int gx = startX + mx;
-                int gy = startY + my;
-
-                int tileX = (int) (x + mx * s);
-                int tileY = (int) (y + my * s);
-                int tileW = (int) Math.max(1, Math.ceil(s));
-                int tileH = tileW;
-
-                int v = map.at(gx, gy);
-                if (v == 0) {
-                    g2.setColor(new Color(60, 60, 60));      // floor
-                } else if (v == 1) {
-                    g2.setColor(new Color(200, 200, 200));   // wall
-                } else if (v == 2) {
-                    g2.setColor(new Color(140, 180, 220));   // door
-                } else {
-                    g2.setColor(new Color(100, 100, 100));   // other
-                }
-                g2.fillRect(tileX, tileY, tileW, tileH);
-            }
+        // Tiles: the part of the window inside the cache comes from it, anything past its edge
+        // reads as wall, like GameMap.at
+        int x0 = Math.max(baseX, startX), y0 = Math.max(baseY, startY);
+        int x1 = Math.min(baseX + baseW, startX + span), y1 = Math.min(baseY + baseH, startY + span);
+        int dx0 = (int) (x + (x0 - startX) * s), dy0 = (int) (y + (y0 - startY) * s);
+        int dx1 = (int) (x + (x1 - startX) * s), dy1 = (int) (y + (y1 - startY) * s);
+        if (x1 - x0 < span || y1 - y0 < span) {
+            g2.setColor(WALL_COLOR);
+            g2.fillRect(x, y, sizePx, sizePx);
+        }
+        if (x1 > x0 && y1 > y0) {
+            Blit.scaled(fb, base, dx0, dy0, dx1, dy1, x0 - baseX, y0 - baseY, x1 - baseX, y1 - baseY);
         }
 
         // Player marker + facing / FOV
         int px = (int) (x + (player.x - startX) * s);
         int py = (int) (y + (player.y - startY) * s);
 
-        g2.setColor(Color.green);
-        g2.fillOval(px - 3, py - 3, 6, 6);
+        Blit.over(fb, PLAYER_DOT, px - 3, py - 3);
+        g2.setColor(PLAYER);
 
         int lx = (int) (px + player.dirX * 12);
         int ly = (int) (py + player.dirY * 12);
@@ -80,12 +124,14 @@ public final class MinimapRenderer {
         g2.drawLine(px, py, fovLx, fovLy);
         g2.drawLine(px, py, fovRx, fovRy);
 
-        // Enemies / sprites in the cropped region
-        g2.setColor(Color.red);
-        for (var sEnt : sprites) {
+        // Enemies / sprites in the cropped region that the player's tile could see
+        g2.setColor(ENEMY);
+        for (int i = 0; i < sprites.size(); i++) {
+            SpriteEntity sEnt = sprites.get(i);
             int exTile = (int) Math.floor(sEnt.x);
             int eyTile = (int) Math.floor(sEnt.y);
-            if (exTile >= startX && exTile < startX + span && eyTile >= startY && eyTile < startY + span) {
+            if (exTile >= startX && exTile < startX + span && eyTile >= startY && eyTile < startY + span
+                    && map.mayBeVisible(player.x, player.y, sEnt.x, sEnt.y)) {
                 int ex = (int) (x + (sEnt.x - startX) * s);
                 int ey = (int) (y + (sEnt.y - startY) * s);
                 // Emphasize enemies slightly
@@ -98,7 +144,99 @@ public final class MinimapRenderer {
         }
 
         // Border
-        g2.setColor(new Color(255, 255, 255, 120));
-        g2.drawRoundRect(x - 2, y - 2, sizePx + 4, sizePx + 4, 10, 10);
+        Blit.over(fb, border, x - 2, y - 2);
+    }
+
+    private void buildPanel(int sizePx) {
+        int side = sizePx + 5;   // a drawRoundRect of width w covers w + 1 pixels
+        panel = new BufferedImage(side, side, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = panel.createGraphics();
+        g.setComposite(PANEL_ALPHA);
+        g.setColor(PANEL);
+        g.fillRoundRect(0, 0, sizePx + 4, sizePx + 4, 10, 10);
+        g.dispose();
+
+        border = new BufferedImage(side, side, BufferedImage.TYPE_INT_ARGB);
+        g = border.createGraphics();
+        g.setColor(BORDER);
+        g.drawRoundRect(0, 0, sizePx + 4, sizePx + 4, 10, 10);
+        g.dispose();
+        panelSize = sizePx;
+    }
+
+    private static BufferedImage dot(Color color, int size) {
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillOval(0, 0, size, size);
+        g.dispose();
+        return img;
+    }
+
+    /** Rebuilds the cache for a new map, otherwise repaints only doors whose shade changed. */
+    private void refresh(GameMap map, Player player) {
+        if (map instanceof StreamingGameMap streamed) {
+            refreshWindow(streamed, player);
+            return;
+        }
+        if (map != cachedMap) {
+            cachedMap = map;
+            baseX = 0; baseY = 0; baseW = map.w; baseH = map.h;
+            base = new BufferedImage(map.w, map.h, BufferedImage.TYPE_INT_ARGB);
+            basePixels = ((DataBufferInt) base.getRaster().getDataBuffer()).getData();
+            paint(map);
+            doorStep = new int[map.doorCount()];
+        }
+        for (int i = 0; i < doorStep.length; i++) {
+            int dx = map.doorX(i), dy = map.doorY(i);
+            int step = (int) (map.getDoorProgress(dx, dy) * DOOR_STEPS);
+            if (step == doorStep[i]) continue;
+            doorStep[i] = step;
+            basePixels[dy * map.w + dx] = DOOR_SHADES[step];
+        }
+    }
+
+    /**
+     * A streamed map's door numbering changes as chunks load, so instead of tracking shades per door
+     * this sets each door pixel in the window to its shade.
+     */
+    private void refreshWindow(StreamingGameMap map, Player player) {
+        int w = Math.min(WINDOW, map.w), h = Math.min(WINDOW, map.h);
+        int x = Math.max(0, Math.min(map.w - w, (int) player.x - w / 2));
+        int y = Math.max(0, Math.min(map.h - h, (int) player.y - h / 2));
+        if (map != cachedMap || Math.abs(x - baseX) >= w / 4 || Math.abs(y - baseY) >= h / 4
+                || map.chunkLoads() != cachedLoads) {
+            if (map != cachedMap) {
+                base = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                basePixels = ((DataBufferInt) base.getRaster().getDataBuffer()).getData();
+                doorStep = null;
+            }
+            cachedMap = map;
+            cachedLoads = map.chunkLoads();
+            baseX = x; baseY = y; baseW = w; baseH = h;
+            paint(map);
+        }
+        for (int i = 0; i < map.doorCount(); i++) {
+            int dx = map.doorX(i) - baseX, dy = map.doorY(i) - baseY;
+            if (dx < 0 || dy < 0 || dx >= baseW || dy >= baseH) continue;
+            int step = (int) (map.getDoorProgress(dx + baseX, dy + baseY) * DOOR_STEPS);
+            basePixels[dy * baseW + dx] = DOOR_SHADES[step];
+        }
+    }
+
+    private void paint(GameMap map) {
+        for (int ty = 0; ty < baseH; ty++) {
+            for (int tx = 0; tx < baseW; tx++) {
+                int v = map.at(baseX + tx, baseY + ty);
+                basePixels[ty * baseW + tx] = v == 0 ? FLOOR : v == 1 ? WALL : v == 2 ? DOOR : OTHER;
+            }
+        }
+    }
+
+    private static int lerp(int a, int b, double t) {
+        int r = (int) Math.round(((a >> 16) & 0xFF) + (((b >> 16) & 0xFF) - ((a >> 16) & 0xFF)) * t);
+        int g = (int) Math.round(((a >> 8) & 0xFF) + (((b >> 8) & 0xFF) - ((a >> 8) & 0xFF)) * t);
+        int bl = (int) Math.round((a & 0xFF) + ((b & 0xFF) - (a & 0xFF)) * t);
+        return 0xFF000000 | (r << 16) | (g << 8) | bl;
     }
 }
@@ -0,0 +1,25 @@
+package se.urmo.wolf.render;
+
+/**
+ * The renderer's data-parallel pixel loops, currently the floor/sky rows. {@link #SCALAR} is the
+ * only implementation; a Vector API one was tried and dropped, as it ran slower than the plain loop.
+ */
+interface PixelKernels {
+    /** How much of a floor or sky row is open: none of it, per {@code spanStart}/{@code spanEnd}, or all. */
+    int NONE = 0, SOME = 1, ALL = 2;
+
+    PixelKernels SCALAR = new ScalarPixelKernels();
+
+    /**
+     * Draws floor row y and its mirrored sky row yTop (both w pixels wide) of fb. The floor point
+     * under column 0 is (fx, fy); each next column's is the last one plus (stepX, stepY), a running
+     * sum in double. Implementations must reproduce that sum rather than fx + x * stepX: the two
+     * round differently, and at cell edges a pixel would land one texel over. Floor pixel x is
+     * drawn where {@code spanEnd[x] < y}, sky pixel x where {@code spanStart[x] > yTop}; floorMode
+     * and skyMode say whether to test that (SOME) or draw everything (ALL) or nothing (NONE).
+     */
+    void floorSkyRow(int[] fb, int w, int y, int yTop, int floorMode, int skyMode,
+                     int[] spanStart, int[] spanEnd,
+                     double fx, double fy, double stepX, double stepY,
+                     int[] floorPx, int fw, int fh, int[] skyPx, int sw, int sh);
+}
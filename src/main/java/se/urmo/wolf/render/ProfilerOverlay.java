@@ -0,0 +1,107 @@
+package se.urmo.wolf.render;
+
+import se.urmo.wolf.core.FrameProfiler;
+import se.urmo.wolf.core.FrameProfiler.Stage;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Locale;
+
+/**
+ * Frame-time graph and percentile table from a {@link FrameProfiler}. Each column of the graph is
+ * one recent frame, stacked by stage with the untracked rest on top; the line marks a 60 Hz frame.
+ * Bars are written straight into the framebuffer. The table text is rebuilt twice a second.
+ */
+public final class ProfilerOverlay {
+    private static final int GRAPH_W = FrameProfiler.CAPACITY >= 240 ? 240 : FrameProfiler.CAPACITY;
+    private static final int GRAPH_H = 64;
+    private static final long FRAME_NANOS = 16_666_667;   // one 60 Hz frame, marked by the line
+    private static final long GRAPH_NANOS = 2 * FRAME_NANOS;
+    private static final int PAD = 4, LINE_H = 13;
+    private static final int REFRESH_FRAMES = 30;
+    private static final Font FONT = new Font("Monospaced", Font.PLAIN, 11);
+
+    private static final Stage[] STAGES = Stage.values();
+    // Bar and table color per stage; the untracked rest is REST
+    private static final int[] COLORS = {
+            0xFF9E9E9E, 0xFFFFD54F, 0xFF66BB6A, 0xFF42A5F5, 0xFFAB47BC, 0xFFFFA726, 0xFF26C6DA
+    };
+    private static final int REST = 0xFFE0E0E0, BUDGET_LINE = 0xFFFF5252;
+    private static final Color[] TEXT = new Color[COLORS.length];
+
+    static {
+        for (int i = 0; i < COLORS.length; i++) TEXT[i] = new Color(COLORS[i]);
+    }
+
+    private final String[] lines = new String[STAGES.length + 4];
+    private long refreshedAt = -REFRESH_FRAMES;
+
+    /** Draws the overlay with its top right corner at (right, top); fb is the image g2 draws into. */
+    public void render(Graphics2D g2, BufferedImage fb, FrameProfiler profiler, int right, int top) {
+        if (profiler.frameCount() - refreshedAt >= REFRESH_FRAMES) refresh(profiler);
+
+        int w = GRAPH_W + 2 * PAD, h = GRAPH_H + lines.length * LINE_H + 3 * PAD;
+        int x0 = right - w, y0 = top;
+        int[] px = ((DataBufferInt) fb.getRaster().getDataBuffer()).getData();
+        int fw = fb.getWidth(), fh = fb.getHeight();
+
+        // Darkened backdrop
+        for (int y = Math.max(0, y0); y < Math.min(fh, y0 + h); y++) {
+            for (int x = Math.max(0, x0), o = y * fw; x < Math.min(fw, x0 + w); x++) {
+                px[o + x] = 0xFF000000 | ((px[o + x] >> 1) & 0x7F7F7F);
+            }
+        }
+
+        int gx = x0 + PAD, gBottom = y0 + PAD + GRAPH_H;
+        int n = Math.min(profiler.size(), GRAPH_W);
+        for (int c = 0; c < n; c++) {
+            int i = profiler.size() - n + c;
+            int x = gx + GRAPH_W - n + c;
+            int y = gBottom;
+            long tracked = 0;
+            for (Stage s : STAGES) {
+                long ns = profiler.stageNanos(i, s);
+                tracked += ns;
+                y = bar(px, fw, fh, x, y, gBottom, tracked, COLORS[s.ordinal()]);
+            }
+            bar(px, fw, fh, x, y, gBottom, Math.max(tracked, profiler.frameNanos(i)), REST);
+        }
+        int budgetY = gBottom - (int) (GRAPH_H * FRAME_NANOS / GRAPH_NANOS);
+        if (budgetY >= 0 && budgetY < fh) {
+            for (int x = Math.max(0, gx); x < Math.min(fw, gx + GRAPH_W); x++) px[budgetY * fw + x] = BUDGET_LINE;
+        }
+
+        g2.setFont(FONT);
+        int ty = gBottom + PAD + LINE_H - 2;
+        for (int l = 0; l < lines.length; l++, ty += LINE_H) {
+            g2.setColor(l >= 2 && l < 2 + STAGES.length ? TEXT[l - 2] : Color.white);
+            g2.drawString(lines[l], gx, ty);
+        }
+    }
+
+    /** Fills column x from y up to the height of cumulative time upTo; returns the new top. */
+    private static int bar(int[] px, int fw, int fh, int x, int y, int bottom, long upTo, int color) {
+        int top = bottom - (int) Math.min(GRAPH_H, upTo * GRAPH_H / GRAPH_NANOS);
+        if (x < 0 || x >= fw) return Math.min(y, top);
+        for (int yy = Math.min(y, fh) - 1; yy >= Math.max(0, top); yy--) px[yy * fw + x] = color;
+        return Math.min(y, top);
+    }
+
+    private void refresh(FrameProfiler p) {
+        refreshedAt = p.frameCount();
+        lines[0] = String.format(Locale.ROOT, "%-8s %6s %6s %6s", "ms", "p50", "p95", "p99");
+        lines[1] = row("frame", p.framePercentile(50), p.framePercentile(95), p.framePercentile(99));
+        for (Stage s : STAGES) {
+            lines[2 + s.ordinal()] = row(s.name().toLowerCase(Locale.ROOT),
+                    p.stagePercentile(s, 50), p.stagePercentile(s, 95), p.stagePercentile(s, 99));
+        }
+        lines[lines.length - 2] = String.format(Locale.ROOT, "alloc B  %6d %6d %6d",
+                p.allocPercentile(50), p.allocPercentile(95), p.allocPercentile(99));
+        lines[lines.length - 1] = String.format(Locale.ROOT, "dropped  %6d", p.droppedTotal());
+    }
+
+    private static String row(String name, long p50, long p95, long p99) {
+        return String.format(Locale.ROOT, "%-8s %6.2f %6.2f %6.2f", name, p50 / 1e6, p95 / 1e6, p99 / 1e6);
+    }
+}
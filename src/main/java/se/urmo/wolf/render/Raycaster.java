@@ -2,31 +2,180 @@ package se.urmo.wolf.render;
 
 import se.urmo.wolf.gfx.Assets;
 import se.urmo.wolf.gfx.Texture;
+import se.urmo.wolf.gfx.TextureAtlas;
 import se.urmo.wolf.world.GameMap;
 import se.urmo.wolf.entities.Player;
 import se.urmo.wolf.entities.SpriteEntity;
 import se.urmo.wolf.entities.AnimatedSpriteEntity;
 
 import java.awt.image.BufferedImage;
-import java.util.Comparator;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
 import java.util.List;
 
 /** 3D-only raycaster: floor/sky, walls/doors (edge slab), sprites. No HUD/UI here. */
 public class Raycaster {
-    private final int W, H;
-    private final double[] zBuffer;
+    /** Render stages for {@link #lastStageNanos}; the raster path draws WALLS before FLOOR. */
+    public enum Stage { FLOOR, WALLS, SPRITES }
+
+    private int W, H;
+    private double[] zBuffer;
+    private final long[] stageNanos = new long[Stage.values().length];
+
+    // true -> write the framebuffer's int[] directly; false -> getRGB/setRGB per pixel (reference path)
+    private boolean directRaster = true;
+    // Column-band parallel wall pass (raster path only); output is identical to the serial pass
+    private boolean parallelWalls = true;
+    // Row-band parallel floor/sky pass (raster path only); each band owns its floor rows and their mirrored sky rows
+    private boolean parallelFloor = true;
+    // Sample walls/doors from the mip level matching their on-screen height
+    private boolean mipmapping = true;
+    // Trace every ADAPTIVE_STEP-th column and fill coherent runs between them (double raster path only);
+    // output is identical to tracing every column, see fillColumns
+    private boolean adaptiveColumns = true;
+    // 16.16 fixed-point DDA and texture stepping (raster path only); see castColumnsFixed for tolerance
+    private boolean fixedPoint = false;
+    // Distance fog via FogTable (raster path only); density 0 turns it off
+    public static final double DEFAULT_FOG_DENSITY = 0.06;
+    private final FogTable fog = new FogTable(DEFAULT_FOG_DENSITY, 0x000000);
+    private int fogColor = 0x000000;
+    // World textures pre-run through the fog table (see FoggedTextures), so their inner loops pick an
+    // array per column or row and shade nothing per pixel. wallFog[level] holds the atlas tiles the
+    // map shows, in atlas layout, with tile id i at slot wallSlot[i]; floorFog is indexed [level].
+    // Taken from fogged once per frame
+    private FoggedTextures fogged;
+    private int[][] wallFog;
+    private int[] wallSlot;
+    private int[][] floorFog;
+    private boolean fogDirty = true;
+    private GameMap fogMap;
+    private int fogTextureVersion;
+    private boolean[] tilesUsed;
+
+    private static final int FP_SHIFT = 16;
+    private static final int FP_ONE = 1 << FP_SHIFT;
+    // Stand-in for an infinite delta when a ray component is zero; small enough that side += delta never overflows
+    private static final long FP_FAR = 1L << 40;
+    // Texture positions carry 32 fraction bits: 16 would let the step error add up to a texel
+    // boundary within one tall column
+    private static final int TP_SHIFT = 32;
+
+    // Bands per worker, so a slow band (near wall, tall spans) doesn't leave cores idle
+    private static final int BANDS_PER_WORKER = 4;
+    // 16 ints = one 64-byte cache line; column bands never share a line within a row
+    private static final int COLUMN_ALIGN = 16;
+
+    // Columns between full traces in adaptive mode
+    private static final int ADAPTIVE_STEP = 8;
+    // Per-column hits from traceColumn: cell, and side (bit 0) plus HIT_DOOR
+    private static final int HIT_DOOR = 2;
+    private int[] hitMapX, hitMapY, hitSide;
+    // Rows covered by the wall in each column (inclusive), from the wall pass; the raster floor/sky
+    // pass only fills around them, and the frame's extremes let whole rows skip the work or the test
+    private int[] spanStart, spanEnd;
+    private int minSpanStart, maxSpanStart, minSpanEnd, maxSpanEnd;
+
+    private final SpriteQueue spriteQueue = new SpriteQueue();
+    private final BandScheduler scheduler = new BandScheduler(BandScheduler.parallelism() * BANDS_PER_WORKER);
+    private final BandScheduler.Body wallBody = this::castColumns;
+    private final BandScheduler.Body wallFixedBody = this::castColumnsFixed;
+    private final BandScheduler.Body floorBody = this::floorRows;
+    private int rowAlign;
+
+    // Per-frame inputs for band workers (published by the fork in BandScheduler.run)
+    private int[] frameFb;
+    private GameMap frameMap;
+    private Player framePlayer;
 
     public Raycaster(int width, int height) {
+        resize(width, height);
+    }
+
+    /** Changes the viewport; the framebuffer passed to render must match it from then on. */
+    public final void resize(int width, int height) {
+        if (width == W && height == H) return;
         this.W = width; this.H = height;
         this.zBuffer = new double[W];
+        this.hitMapX = new int[W];
+        this.hitMapY = new int[W];
+        this.hitSide = new int[W];
+        this.spanStart = new int[W];
+        this.spanEnd = new int[W];
+        // Smallest row count whose pixel span is a whole number of cache lines
+        this.rowAlign = 16 / gcd(W, 16);
+    }
+
+    public int getWidth() { return W; }
+    public int getHeight() { return H; }
+
+    public boolean isDirectRaster() { return directRaster; }
+    public void setDirectRaster(boolean directRaster) { this.directRaster = directRaster; }
+
+    public boolean isParallelWalls() { return parallelWalls; }
+    public void setParallelWalls(boolean parallelWalls) { this.parallelWalls = parallelWalls; }
+
+    public boolean isMipmapping() { return mipmapping; }
+    public void setMipmapping(boolean mipmapping) { this.mipmapping = mipmapping; }
+
+    public boolean isAdaptiveColumns() { return adaptiveColumns; }
+    public void setAdaptiveColumns(boolean adaptiveColumns) { this.adaptiveColumns = adaptiveColumns; }
+
+    public boolean isFixedPoint() { return fixedPoint; }
+    public void setFixedPoint(boolean fixedPoint) { this.fixedPoint = fixedPoint; }
+
+    public boolean isParallelFloor() { return parallelFloor; }
+    public void setParallelFloor(boolean parallelFloor) { this.parallelFloor = parallelFloor; }
+
+    /** Fog per tile of distance: the fraction of fog color at distance d is 1 - exp(-density * d). */
+    public double getFogDensity() { return fog.density(); }
+    public void setFogDensity(double density) { fog.configure(density, fogColor); fogDirty = true; }
+
+    public int getFogColor() { return fogColor; }
+    public void setFogColor(int rgb) {
+        fogColor = rgb & 0xFFFFFF;
+        fog.configure(fog.density(), fogColor);
+        fogDirty = true;
     }
 
     /** Main entry (world only). */
     public void render(BufferedImage fb, GameMap map, Player p,
                        List<SpriteEntity> sprites, double timeSeconds) {
-        drawFloorAndSky(fb, p, H);
-        drawWallsAndDoors(fb, map, p, H);
-        drawSprites(fb, p, sprites, timeSeconds, H);
+        int[] px = directRaster ? rasterOf(fb) : null;
+        if (px != null) prepareFog(map);
+        long t0 = System.nanoTime();
+        long t1, t2;
+        if (px != null) {
+            // Walls first: they record their spans, and the floor/sky pass then fills only around them
+            drawWallsAndDoors(px, map, p, H);
+            t1 = System.nanoTime();
+            drawFloorAndSky(px, p, H);
+            t2 = System.nanoTime();
+            stageNanos[Stage.WALLS.ordinal()] = t1 - t0;
+            stageNanos[Stage.FLOOR.ordinal()] = t2 - t1;
+        } else {
+            drawFloorAndSky(fb, p, H);
+            t1 = System.nanoTime();
+            drawWallsAndDoors(fb, map, p, H);
+            t2 = System.nanoTime();
+            stageNanos[Stage.FLOOR.ordinal()] = t1 - t0;
+            stageNanos[Stage.WALLS.ordinal()] = t2 - t1;
+        }
+        if (px != null) drawSprites(px, map, p, sprites, timeSeconds, H); else drawSprites(fb, map, p, sprites, timeSeconds, H);
+        long t3 = System.nanoTime();
+        stageNanos[Stage.SPRITES.ordinal()] = t3 - t2;
+    }
+
+    /** Time spent in a stage during the last render call, in nanoseconds. */
+    public long lastStageNanos(Stage stage) { return stageNanos[stage.ordinal()]; }
+
+    /** Backing int[] of a W x H packed-int image, or null if it can't be written directly. */
+    private int[] rasterOf(BufferedImage fb) {
+        if (fb.getWidth() != W || fb.getHeight() != H) return null;
+        if (!(fb.getRaster().getDataBuffer() instanceof DataBufferInt db)) return null;
+        if (!(fb.getSampleModel() instanceof SinglePixelPackedSampleModel sm)) return null;
+        if (sm.getScanlineStride() != W || db.getOffset() != 0 || fb.getRaster().getParent() != null) return null;
+        return db.getData();
     }
 
     // ------------------------------------------------------------------------
@@ -95,7 +244,7 @@ public class Raycaster {
             int drawStart = Math.max(0, -lineHeight / 2 + viewH / 2);
             int drawEnd   = Math.min(viewH - 1,  lineHeight / 2 + viewH / 2);
 
-            Texture tex = (hitType == 2 && Assets.DOOR != null) ? Assets.DOOR : Assets.WALL;
+            Texture tex = Assets.WALL_TILES[map.textureAt(mapX, mapY)];
 
             int texX = (int) (wallX * tex.w);
             // Keep flip consistent with wall faces for both walls and doors (since doors are at the edge)
@@ -174,20 +323,16 @@ public class Raycaster {
     // ------------------------------------------------------------------------
     // Sprites
     // ------------------------------------------------------------------------
-    private void drawSprites(BufferedImage fb, Player p, List<SpriteEntity> sprites,
+    private void drawSprites(BufferedImage fb, GameMap map, Player p, List<SpriteEntity> sprites,
                              double timeSeconds, int viewH) {
         if (sprites == null || sprites.isEmpty()) return;
 
-        sprites.sort(Comparator.comparingDouble(s -> -dist2(p.x, p.y, s.x, s.y)));
-
-        for (SpriteEntity s : sprites) {
-            double sx = s.x - p.x;
-            double sy = s.y - p.y;
-
-            double invDet = 1.0 / (p.planeX * p.dirY - p.dirX * p.planeY);
-            double tx = invDet * ( p.dirY * sx - p.dirX * sy);
-            double ty = invDet * (-p.planeY * sx + p.planeX * sy);
-            if (ty <= 0.0001) continue;
+        int n = spriteQueue.prepare(sprites, p, map, W, viewH, maxWallDepth());
+        for (int k = 0; k < n; k++) {
+            int i = spriteQueue.index(k);
+            SpriteEntity s = sprites.get(i);
+            double tx = spriteQueue.across(i);
+            double ty = spriteQueue.depth(i);
 
             int screenX = (int) ((W / 2.0) * (1 + tx / ty));
 
@@ -228,11 +373,486 @@ public class Raycaster {
         }
     }
 
+    // ------------------------------------------------------------------------
+    // Raster path: same algorithms, reading packed Texture texels and writing fb int[]
+    // ------------------------------------------------------------------------
+    private void drawWallsAndDoors(int[] fb, GameMap map, Player p, int viewH) {
+        frameFb = fb; frameMap = map; framePlayer = p;
+        BandScheduler.Body body = fixedPoint ? wallFixedBody : wallBody;
+        if (parallelWalls) {
+            scheduler.run(body, W, BandScheduler.parallelism() * BANDS_PER_WORKER, COLUMN_ALIGN);
+        } else {
+            body.run(0, W);
+        }
+        frameFb = null; frameMap = null; framePlayer = null;
+    }
+
+    /** Casts and draws columns [x0, x1); each column only touches its own pixels and zBuffer[x]. */
+    private void castColumns(int x0, int x1) {
+        int[] fb = frameFb;
+        GameMap map = frameMap;
+        Player p = framePlayer;
+        TextureAtlas atlas = Assets.WALLS;
+        if (adaptiveColumns && x1 - x0 > 2) {
+            // Full casts every ADAPTIVE_STEP columns (and at the band's last column), then fill or subdivide the gaps
+            traceColumn(x0, map, p);
+            for (int a = x0; a < x1 - 1; ) {
+                int b = Math.min(a + ADAPTIVE_STEP, x1 - 1);
+                traceColumn(b, map, p);
+                fillColumns(a, b, map, p);
+                a = b;
+            }
+            for (int x = x0; x < x1; x++) drawColumn(x, fb, map, p, atlas);
+        } else {
+            for (int x = x0; x < x1; x++) {
+                traceColumn(x, map, p);
+                drawColumn(x, fb, map, p, atlas);
+            }
+        }
+    }
+
+    /**
+     * Gives the columns strictly between a and b (both traced) their hits. If a and b hit the same
+     * face of the same cell, every ray between them does too: the wedge between the two rays is
+     * narrower than one tile everywhere in front of that face, so a solid cell inside it would have
+     * to cross one of the two rays, and that ray would have stopped there. Otherwise bisect.
+     */
+    private void fillColumns(int a, int b, GameMap map, Player p) {
+        if (b - a < 2) return;
+        if (hitMapX[a] == hitMapX[b] && hitMapY[a] == hitMapY[b] && hitSide[a] == hitSide[b]) {
+            for (int x = a + 1; x < b; x++) {
+                hitMapX[x] = hitMapX[a]; hitMapY[x] = hitMapY[a]; hitSide[x] = hitSide[a];
+            }
+            return;
+        }
+        int mid = (a + b) >>> 1;
+        traceColumn(mid, map, p);
+        fillColumns(a, mid, map, p);
+        fillColumns(mid, b, map, p);
+    }
+
+    /** Runs the DDA for column x and records the cell it stops in, the side and whether it is a door. */
+    private void traceColumn(int x, GameMap map, Player p) {
+        double cameraX = 2.0 * x / W - 1.0;
+        double rayDirX = p.dirX + p.planeX * cameraX;
+        double rayDirY = p.dirY + p.planeY * cameraX;
+
+        int mapX = (int) p.x;
+        int mapY = (int) p.y;
+
+        double deltaX = (rayDirX == 0) ? 1e30 : Math.abs(1.0 / rayDirX);
+        double deltaY = (rayDirY == 0) ? 1e30 : Math.abs(1.0 / rayDirY);
+
+        int stepX, stepY;
+        double sideX, sideY;
+        if (rayDirX < 0) { stepX = -1; sideX = (p.x - mapX) * deltaX; }
+        else             { stepX = 1;  sideX = (mapX + 1.0 - p.x) * deltaX; }
+        if (rayDirY < 0) { stepY = -1; sideY = (p.y - mapY) * deltaY; }
+        else             { stepY = 1;  sideY = (mapY + 1.0 - p.y) * deltaY; }
+
+        int side = 0;
+        int hitType;
+        while (true) {
+            if (sideX < sideY) { sideX += deltaX; mapX += stepX; side = 0; }
+            else               { sideY += deltaY; mapY += stepY; side = 1; }
+
+            if (map.isSolid(mapX, mapY)) { hitType = map.at(mapX, mapY); break; }   // wall, or a door not fully open
+        }
+        hitMapX[x] = mapX;
+        hitMapY[x] = mapY;
+        hitSide[x] = side | (hitType == 2 ? HIT_DOOR : 0);
+    }
+
+    /** Draws column x from its recorded hit; the distance comes from the cell face, not the DDA sums. */
+    private void drawColumn(int x, int[] fb, GameMap map, Player p, TextureAtlas atlas) {
+        int viewH = H;
+        double cameraX = 2.0 * x / W - 1.0;
+        double rayDirX = p.dirX + p.planeX * cameraX;
+        double rayDirY = p.dirY + p.planeY * cameraX;
+        int stepX = rayDirX < 0 ? -1 : 1;
+        int stepY = rayDirY < 0 ? -1 : 1;
+
+        int mapX = hitMapX[x], mapY = hitMapY[x];
+        int side = hitSide[x] & 1;
+        boolean door = (hitSide[x] & HIT_DOOR) != 0;
+
+        double perpDist = (side == 0)
+                ? (mapX - p.x + (1 - stepX)/2.0) / (rayDirX == 0 ? 1e-6 : rayDirX)
+                : (mapY - p.y + (1 - stepY)/2.0) / (rayDirY == 0 ? 1e-6 : rayDirY);
+        if (perpDist < 1e-6) perpDist = 1e-6;
+
+        double wallX = (side == 0) ? p.y + perpDist * rayDirY
+                : p.x + perpDist * rayDirX;
+        wallX -= Math.floor(wallX);
+
+        int lineHeight = (int) (viewH / perpDist);
+        int drawStart = Math.max(0, -lineHeight / 2 + viewH / 2);
+        int drawEnd   = Math.min(viewH - 1,  lineHeight / 2 + viewH / 2);
+
+        int level = mipmapping ? atlas.mipLevel(lineHeight) : 0;
+        int[] texels = wallFog[fog.level(perpDist)];
+        // Y-side walls read the pre-darkened chain; doors stay unshaded
+        int chain = atlas.chainOffset(wallSlot[map.textureAt(mapX, mapY)], side == 1 && !door);
+        int tw = atlas.mipSize(level), th = tw;
+
+        int texX = (int) (wallX * tw);
+        if (side == 0 && rayDirX > 0) texX = tw - texX - 1;
+        if (side == 1 && rayDirY < 0) texX = tw - texX - 1;
+        if (texX < 0) texX = 0; else if (texX >= tw) texX = tw - 1;
+
+        double step = (double) th / lineHeight;
+        double texPos = (drawStart - viewH / 2.0 + lineHeight / 2.0) * step;
+
+        int col = chain + atlas.mipOffset(level) + texX * th;
+        int o = drawStart * W + x;
+        for (int y = drawStart; y <= drawEnd; y++, o += W) {
+            int texY = (int) texPos;
+            if (texY < 0) texY = 0; else if (texY >= th) texY = th - 1;
+            texPos += step;
+            fb[o] = texels[col + texY];
+        }
+
+        zBuffer[x] = perpDist;
+        spanStart[x] = drawStart;
+        spanEnd[x] = drawEnd;
+    }
+
+    /**
+     * 16.16 fixed-point variant of castColumns. Ray directions, side distances and the hit distance
+     * are 16.16; the distance is taken at the cell face, as in drawColumn, not from the DDA sums.
+     * Texture positions are 32.32 and step up from the exact start (see texStart), so each row reads
+     * the texel the exact ratio gives; only a full-height last row needs the th - 1 the double path
+     * clamps to. Tolerance against the double path: ray directions are 16-bit, so a span edge may
+     * move by one pixel and a texture column by one texel, and the hit cell can differ where a ray
+     * passes within about 2^-16 of a tile corner. Over 400 random map1 poses at 640x480 with fog
+     * off, about 0.26% of pixels differ (0.21% with 50 guards in view). Most of those are single rows
+     * where the double path's running texPos lands just under a texel boundary that the exact
+     * ratio reaches; against exact texture rows the fixed path differs in under 0.1%.
+     */
+    private void castColumnsFixed(int x0, int x1) {
+        int[] fb = frameFb;
+        GameMap map = frameMap;
+        Player p = framePlayer;
+        int viewH = H;
+        TextureAtlas atlas = Assets.WALLS;
+
+        long posX = (long) (p.x * FP_ONE), posY = (long) (p.y * FP_ONE);
+        long dirX = (long) (p.dirX * FP_ONE), dirY = (long) (p.dirY * FP_ONE);
+        long planeX = (long) (p.planeX * FP_ONE), planeY = (long) (p.planeY * FP_ONE);
+        long fracX = posX & (FP_ONE - 1), fracY = posY & (FP_ONE - 1);
+
+        for (int x = x0; x < x1; x++) {
+            long cameraX = ((long) (2 * x - W) << FP_SHIFT) / W;
+            long rayDirX = dirX + ((planeX * cameraX) >> FP_SHIFT);
+            long rayDirY = dirY + ((planeY * cameraX) >> FP_SHIFT);
+
+            int mapX = (int) (posX >> FP_SHIFT);
+            int mapY = (int) (posY >> FP_SHIFT);
+
+            // |1 / rayDir| in 16.16
+            long deltaX = (rayDirX == 0) ? FP_FAR : Math.min(FP_FAR, (1L << (2 * FP_SHIFT)) / Math.abs(rayDirX));
+            long deltaY = (rayDirY == 0) ? FP_FAR : Math.min(FP_FAR, (1L << (2 * FP_SHIFT)) / Math.abs(rayDirY));
+
+            int stepX, stepY;
+            long sideX, sideY;
+            if (rayDirX < 0) { stepX = -1; sideX = (fracX * deltaX) >> FP_SHIFT; }
+            else             { stepX = 1;  sideX = ((FP_ONE - fracX) * deltaX) >> FP_SHIFT; }
+            if (rayDirY < 0) { stepY = -1; sideY = (fracY * deltaY) >> FP_SHIFT; }
+            else             { stepY = 1;  sideY = ((FP_ONE - fracY) * deltaY) >> FP_SHIFT; }
+
+            int side;
+            int hitType;
+            while (true) {
+                if (sideX < sideY) { sideX += deltaX; mapX += stepX; side = 0; }
+                else               { sideY += deltaY; mapY += stepY; side = 1; }
+
+                if (map.isSolid(mapX, mapY)) { hitType = map.at(mapX, mapY); break; }   // wall, or a door not fully open
+            }
+
+            // Distance to the face of the hit cell; face and ray direction have the same sign
+            long perpDist = (side == 0)
+                    ? ((((long) mapX << FP_SHIFT) - posX + (stepX < 0 ? FP_ONE : 0)) << FP_SHIFT) / (rayDirX == 0 ? 1 : rayDirX)
+                    : ((((long) mapY << FP_SHIFT) - posY + (stepY < 0 ? FP_ONE : 0)) << FP_SHIFT) / (rayDirY == 0 ? 1 : rayDirY);
+            if (perpDist < 1) perpDist = 1;
+
+            long wallX = (side == 0) ? posY + ((perpDist * rayDirY) >> FP_SHIFT)
+                    : posX + ((perpDist * rayDirX) >> FP_SHIFT);
+            wallX &= FP_ONE - 1;
+
+            int lineHeight = (int) Math.min(Integer.MAX_VALUE / 2, ((long) viewH << FP_SHIFT) / perpDist);
+            if (lineHeight < 1) lineHeight = 1;
+            int drawStart = Math.max(0, -lineHeight / 2 + viewH / 2);
+            int drawEnd   = Math.min(viewH - 1,  lineHeight / 2 + viewH / 2);
+
+            int level = mipmapping ? atlas.mipLevel(lineHeight) : 0;
+            int[] texels = wallFog[fog.level((double) perpDist / FP_ONE)];
+            int chain = atlas.chainOffset(wallSlot[map.textureAt(mapX, mapY)], side == 1 && hitType != 2);
+            int tw = atlas.mipSize(level), th = tw;
+
+            int texX = (int) ((wallX * tw) >> FP_SHIFT);
+            if (side == 0 && rayDirX > 0) texX = tw - texX - 1;
+            if (side == 1 && rayDirY < 0) texX = tw - texX - 1;
+
+            long step = texStep(th, lineHeight);
+            long texPos = texStart(drawStart, viewH, lineHeight, th);
+            // The row at the bottom of an unclipped even-height column maps to th itself
+            int last = 2 * drawEnd >= viewH + lineHeight ? drawEnd - 1 : drawEnd;
+
+            int col = chain + atlas.mipOffset(level) + texX * th;
+            int o = drawStart * W + x;
+            for (int y = drawStart; y <= last; y++, o += W) {
+                fb[o] = texels[col + (int) (texPos >>> TP_SHIFT)];
+                texPos += step;
+            }
+            if (last < drawEnd) fb[o] = texels[col + th - 1];
+
+            zBuffer[x] = (double) perpDist / FP_ONE;
+            spanStart[x] = drawStart;
+            spanEnd[x] = drawEnd;
+        }
+    }
+
+    private void drawFloorAndSky(int[] fb, Player p, int viewH) {
+        if (Assets.FLOOR == null || Assets.SKY == null) return;
+        frameFb = fb; framePlayer = p;
+        int minStart = viewH, maxStart = 0, minEnd = viewH, maxEnd = 0;
+        for (int x = 0; x < W; x++) {
+            int a = spanStart[x], b = spanEnd[x];
+            if (a < minStart) minStart = a;
+            if (a > maxStart) maxStart = a;
+            if (b < minEnd) minEnd = b;
+            if (b > maxEnd) maxEnd = b;
+        }
+        minSpanStart = minStart; maxSpanStart = maxStart; minSpanEnd = minEnd; maxSpanEnd = maxEnd;
+        int rows = viewH - viewH / 2;
+        if (parallelFloor) {
+            scheduler.run(floorBody, rows, BandScheduler.parallelism() * BANDS_PER_WORKER, rowAlign);
+        } else {
+            floorRows(0, rows);
+        }
+        frameFb = null; framePlayer = null;
+    }
+
+    /**
+     * Draws floor rows viewH/2 + [r0, r1) and the sky rows mirrored above the horizon, skipping the
+     * pixels the wall pass already covered. The texture position still steps across every column so
+     * the pixels drawn match a full row exactly.
+     */
+    private void floorRows(int r0, int r1) {
+        int[] fb = frameFb;
+        Player p = framePlayer;
+        int viewH = H;
+        Texture floor = Assets.FLOOR, sky = Assets.SKY;
+        int[] skyPx = sky.pixels;
+        int fw = floor.w, fh = floor.h, sw = sky.w, sh = sky.h;
+        PixelKernels kernels = PixelKernels.SCALAR;
+
+        int minStart = minSpanStart, maxStart = maxSpanStart, minEnd = minSpanEnd, maxEnd = maxSpanEnd;
+
+        double rx0 = p.dirX - p.planeX, ry0 = p.dirY - p.planeY;
+        double rx1 = p.dirX + p.planeX, ry1 = p.dirY + p.planeY;
+
+        for (int y = viewH / 2 + r0; y < viewH / 2 + r1; y++) {
+            double ppx = y - viewH / 2.0;
+            if (ppx == 0) continue;
+
+            double rowDist = (0.5 * viewH) / ppx;
+
+            double stepX = rowDist * (rx1 - rx0) / W;
+            double stepY = rowDist * (ry1 - ry0) / W;
+            double fx = p.x + rowDist * rx0;
+            double fy = p.y + rowDist * ry0;
+
+            int yTop = (viewH - 1) - y;
+            // The sky stays clear; only the floor fades with distance
+            int[] floorPx = floorFog[fog.level(rowDist)];
+
+            // Floor pixel x is open below spanEnd[x], sky pixel above spanStart[x]
+            int floorMode = y > maxEnd ? PixelKernels.ALL : y > minEnd ? PixelKernels.SOME : PixelKernels.NONE;
+            int skyMode = yTop < 0 ? PixelKernels.NONE
+                    : yTop < minStart ? PixelKernels.ALL : yTop < maxStart ? PixelKernels.SOME : PixelKernels.NONE;
+            if (floorMode == PixelKernels.NONE && skyMode == PixelKernels.NONE) continue;
+
+            kernels.floorSkyRow(fb, W, y, yTop, floorMode, skyMode, spanStart, spanEnd,
+                    fx, fy, stepX, stepY, floorPx, fw, fh, skyPx, sw, sh);
+        }
+    }
+
+    private void drawSprites(int[] fb, GameMap map, Player p, List<SpriteEntity> sprites,
+                             double timeSeconds, int viewH) {
+        if (sprites == null || sprites.isEmpty()) return;
+
+        int n = spriteQueue.prepare(sprites, p, map, W, viewH, maxWallDepth());
+        for (int k = 0; k < n; k++) {
+            int i = spriteQueue.index(k);
+            SpriteEntity s = sprites.get(i);
+            double tx = spriteQueue.across(i);
+            double ty = spriteQueue.depth(i);
+
+            int screenX = (int) ((W / 2.0) * (1 + tx / ty));
+
+            int spriteH = Math.abs((int) (viewH / ty));
+            int drawStartY = Math.max(0, -spriteH / 2 + viewH / 2);
+            int drawEndY   = Math.min(viewH - 1,  spriteH / 2 + viewH / 2);
+
+            int spriteW = spriteH;
+            int drawStartX = Math.max(0, -spriteW / 2 + screenX);
+            int drawEndX   = Math.min(W - 1,  spriteW / 2 + screenX);
+
+            Texture tex = s.getFrameTexture(p, timeSeconds);
+            if (tex == null) continue;
+
+            int light = fog.level(ty);
+            if (fixedPoint) {
+                drawSpriteFixed(fb, tex, ty, light, screenX, spriteH, drawStartX, drawEndX, drawStartY, drawEndY);
+                continue;
+            }
+
+            int[] texels = tex.columns();
+            int[] spanIndex = tex.spanIndex, spans = tex.spans;
+            int tw = tex.w, th = tex.h;
+            double step = (double) th / spriteH;
+            double tp0 = (drawStartY - viewH / 2.0 + spriteH / 2.0) * step;
+            int rows = drawEndY - drawStartY + 1;
+
+            for (int stripe = drawStartX; stripe <= drawEndX; stripe++) {
+                if (ty >= zBuffer[stripe]) continue;
+
+                int texX = (int) ((stripe - (-spriteW / 2.0 + screenX)) * tw / (double) spriteW);
+                if (texX < 0) texX = 0; else if (texX >= tw) texX = tw - 1;
+
+                // Only the opaque runs of this texel column; transparent columns have none
+                int col = texX * th;
+                for (int r = spanIndex[texX], rEnd = spanIndex[texX + 1]; r < rEnd; r += 2) {
+                    int row = firstRow(tp0, step, spans[r], rows);
+                    int rowEnd = spans[r + 1] >= th ? rows : firstRow(tp0, step, spans[r + 1], rows);
+                    int o = (drawStartY + row) * W + stripe;
+                    for (; row < rowEnd; row++, o += W) {
+                        int texY = (int) (tp0 + row * step);
+                        if (texY >= th) texY = th - 1;
+                        int c = texels[col + texY];
+                        fb[o] = light == 0 ? c : fog.apply(c, light);
+                    }
+                }
+            }
+        }
+    }
+
+    /** First row k in [0, rows] whose texel row (int) (tp0 + k * step) is at least texY. */
+    private static int firstRow(double tp0, double step, int texY, int rows) {
+        int k = (int) Math.ceil((texY - tp0) / step);
+        if (k < 0) k = 0;
+        while (k > 0 && (int) (tp0 + (k - 1) * step) >= texY) k--;
+        while (k < rows && (int) (tp0 + k * step) < texY) k++;
+        return Math.min(k, rows);
+    }
+
+    /**
+     * Fixed-point sprite scaling. Texture positions are 32.32 and step up from the exact start, so
+     * texX and texY match the exact ratios the double path rounds; only the last stripe and row of
+     * an even-sized sprite map past the texture, onto the edge texel as in the double path.
+     */
+    private void drawSpriteFixed(int[] fb, Texture tex, double ty, int light, int screenX, int spriteH,
+                                 int drawStartX, int drawEndX, int drawStartY, int drawEndY) {
+        if (spriteH < 1) return;
+        int[] texels = tex.columns();
+        int[] spanIndex = tex.spanIndex, spans = tex.spans;
+        int tw = tex.w, th = tex.h;
+        int spriteW = spriteH;
+
+        long yStep = texStep(th, spriteH);
+        long tp0 = texStart(drawStartY, H, spriteH, th);
+        long xStep = texStep(tw, spriteW);
+        long xPos = texStart(drawStartX, 2 * screenX, spriteW, tw);
+        int rows = drawEndY - drawStartY + 1;
+
+        for (int stripe = drawStartX; stripe <= drawEndX; stripe++, xPos += xStep) {
+            if (ty >= zBuffer[stripe]) continue;
+
+            int texX = (int) Math.min(tw - 1, xPos >>> TP_SHIFT);
+            int col = texX * th;
+            for (int r = spanIndex[texX], rEnd = spanIndex[texX + 1]; r < rEnd; r += 2) {
+                int k = firstStep(tp0, yStep, spans[r], rows);
+                int kEnd = firstStep(tp0, yStep, spans[r + 1], rows);
+                long tp = tp0 + k * yStep;
+                int o = (drawStartY + k) * W + stripe;
+                for (; k < kEnd; k++, o += W, tp += yStep) {
+                    int c = texels[col + (int) (tp >>> TP_SHIFT)];
+                    fb[o] = light == 0 ? c : fog.apply(c, light);
+                }
+                if (spans[r + 1] < th) continue;
+                for (; k < rows; k++, o += W) {
+                    int c = texels[col + th - 1];
+                    fb[o] = light == 0 ? c : fog.apply(c, light);
+                }
+            }
+        }
+    }
+
+    /** First k in [0, rows] with tp0 + k * step at or past texel row texY (exact in 32.32). */
+    private static int firstStep(long tp0, long step, int texY, int rows) {
+        long target = (long) texY << TP_SHIFT;
+        if (tp0 >= target) return 0;
+        long k = (target - tp0 + step - 1) / step;
+        return (int) Math.min(k, rows);
+    }
+
+    /** size / span in 32.32, rounded up. */
+    private static long texStep(int size, int span) {
+        return ((long) (size / span) << TP_SHIFT) + ((((long) (size % span)) << TP_SHIFT) + span - 1) / span;
+    }
+
+    /**
+     * Texture position of screen row (or column) first when a span pixels long is centred on
+     * center / 2 and covers size texels: (first - center / 2 + span / 2) * size / span in 32.32,
+     * rounded up. Rounding the start and the step up keeps every position at or just above the
+     * exact one, by far less than the 1 / (2 * span) that separates a position below a texel
+     * boundary from it, so the integer part is always the exact texel.
+     */
+    private static long texStart(int first, int center, int span, int size) {
+        long num = Math.max(0, 2L * first - center + span) * size, den = 2L * span;
+        return ((num / den) << TP_SHIFT) + (((num % den) << TP_SHIFT) + den - 1) / den;
+    }
+
     // ------------------------------------------------------------------------
     // Utils
     // ------------------------------------------------------------------------
-    private static double dist2(double ax, double ay, double bx, double by) {
-        double dx = ax - bx, dy = ay - by;
-        return dx * dx + dy * dy;
+    /**
+     * Picks up the fogged textures after a density/color change and packs the wall tiles the map
+     * shows that aren't yet. Once a map's tiles are in, this is a couple of compares per frame.
+     */
+    private void prepareFog(GameMap map) {
+        TextureAtlas atlas = Assets.WALLS;
+        if (fogDirty) {
+            fogged = FoggedTextures.of(atlas, Assets.FLOOR != null ? Assets.FLOOR.pixels : null, fog.density(), fogColor);
+            fogDirty = false;
+            fogMap = null;
+        }
+        int version = map.textureVersion();
+        if (map != fogMap || version != fogTextureVersion) {
+            if (tilesUsed == null || tilesUsed.length != atlas.count) tilesUsed = new boolean[atlas.count];
+            Arrays.fill(tilesUsed, false);
+            tilesUsed[GameMap.DOOR_TEXTURE] = true;
+            tilesUsed[map.textureAt(-1, -1)] = true;   // rays leaving the map (or its loaded part) hit this one
+            map.texturesInUse(tilesUsed);
+            fogged.ensure(tilesUsed);
+            fogMap = map;
+            fogTextureVersion = version;
+        }
+        wallFog = fogged.walls;
+        wallSlot = fogged.slot;
+        floorFog = fogged.floor;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) { int t = a % b; a = b; b = t; }
+        return a;
+    }
+
+    /** Farthest wall hit this frame; sprites at or beyond it are hidden in every column. */
+    private double maxWallDepth() {
+        double max = 0.0;
+        for (int x = 0; x < W; x++) if (zBuffer[x] > max) max = zBuffer[x];
+        return max;
     }
 }
@@ -0,0 +1,83 @@
+package se.urmo.wolf.render;
+
+/**
+ * Picks the internal resolution of the 3D view from measured frame times. Steps down quickly when
+ * frames run over budget and back up slowly once there is clear headroom, so the scale doesn't
+ * oscillate around the threshold.
+ */
+public final class ResolutionScaler {
+    // Fractions of native width/height, from full resolution down
+    private static final double[] SCALES = { 1.0, 0.85, 0.7, 0.6, 0.5 };
+
+    // Exponential moving average weight for new samples
+    private static final double SMOOTHING = 0.1;
+    // Over this fraction of the budget counts as slow, under LOW as having room to grow
+    private static final double HIGH = 0.95, LOW = 0.65;
+    // Consecutive slow/fast frames needed before stepping; up is deliberately much slower than down
+    private static final int DOWN_FRAMES = 15, UP_FRAMES = 120;
+
+    private final int nativeW, nativeH;
+    private final double budgetNanos;
+
+    private boolean enabled = true;
+    private int level = 0;
+    private double avgNanos;
+    private int slowFrames, fastFrames;
+
+    /**
+     * @param budgetNanos whole-frame time to hold, e.g. one 60 Hz frame; frames count as slow a
+     *                    little under it (HIGH), which leaves the margin
+     */
+    public ResolutionScaler(int nativeW, int nativeH, double budgetNanos) {
+        this.nativeW = nativeW; this.nativeH = nativeH;
+        this.budgetNanos = budgetNanos;
+        this.avgNanos = budgetNanos * 0.5;
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) setLevel(0);
+    }
+
+    /** Current render width; even, so the upscale ratio stays stable at half resolution. */
+    public int width() { return scaled(nativeW); }
+    public int height() { return scaled(nativeH); }
+    public double scale() { return SCALES[level]; }
+
+    /**
+     * Feeds the time the last whole frame took, update and present included: the work that doesn't
+     * shrink with resolution still has to fit the budget. Returns true if the resolution changed.
+     */
+    public boolean frameTime(long nanos) {
+        if (!enabled) return false;
+        avgNanos += (nanos - avgNanos) * SMOOTHING;
+
+        if (avgNanos > budgetNanos * HIGH) { slowFrames++; fastFrames = 0; }
+        else if (avgNanos < budgetNanos * LOW) { fastFrames++; slowFrames = 0; }
+        else { slowFrames = 0; fastFrames = 0; }
+
+        if (slowFrames >= DOWN_FRAMES && level < SCALES.length - 1) return setLevel(level + 1);
+        if (fastFrames >= UP_FRAMES && level > 0) {
+            // Only step up if the larger resolution is predicted to fit, assuming cost ~ pixel count
+            double r = SCALES[level - 1] / SCALES[level];
+            if (avgNanos * r * r < budgetNanos * HIGH) return setLevel(level - 1);
+            fastFrames = 0;
+        }
+        return false;
+    }
+
+    private boolean setLevel(int newLevel) {
+        slowFrames = 0; fastFrames = 0;
+        if (newLevel == level) return false;
+        // Rescale the average to the new pixel count, so the next decision starts from a fair estimate
+        double r = SCALES[newLevel] / SCALES[level];
+        avgNanos *= r * r;
+        level = newLevel;
+        return true;
+    }
+
+    private int scaled(int n) {
+        return Math.max(2, ((int) Math.round(n * SCALES[level])) & ~1);
+    }
+}
@@ -0,0 +1,37 @@
+package se.urmo.wolf.render;
+
+/** Plain-loop {@link PixelKernels}. */
+final class ScalarPixelKernels implements PixelKernels {
+    @Override
+    public void floorSkyRow(int[] fb, int w, int y, int yTop, int floorMode, int skyMode,
+                            int[] spanStart, int[] spanEnd,
+                            double fx, double fy, double stepX, double stepY,
+                            int[] floorPx, int fw, int fh, int[] skyPx, int sw, int sh) {
+        int floorRow = y * w, skyRow = yTop * w;
+        boolean floorAll = floorMode == ALL, floorAny = floorMode != NONE;
+        boolean skyAll = skyMode == ALL, skyAny = skyMode != NONE;
+
+        for (int x = 0; x < w; x++) {
+            boolean floorHere = floorAll || (floorAny && spanEnd[x] < y);
+            boolean skyHere = skyAll || (skyAny && spanStart[x] > yTop);
+            if (floorHere || skyHere) {
+                int cellX = (int) fx, cellY = (int) fy;
+                double tx = (fx - cellX) * fw;
+                double ty = (fy - cellY) * fh;
+
+                int u = (int) tx; if (u < 0) u = 0; else if (u >= fw) u = fw - 1;
+                int v = (int) ty; if (v < 0) v = 0; else if (v >= fh) v = fh - 1;
+
+                if (floorHere) fb[floorRow + x] = floorPx[v * fw + u];
+
+                if (skyHere) {
+                    int uu = (u >= sw) ? sw - 1 : u;
+                    int vv = (v >= sh) ? sh - 1 : v;
+                    fb[skyRow + x] = skyPx[vv * sw + uu];
+                }
+            }
+
+            fx += stepX; fy += stepY;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package se.urmo.wolf.render;
+
+import se.urmo.wolf.entities.Player;
+import se.urmo.wolf.entities.SpriteEntity;
+import se.urmo.wolf.world.GameMap;
+
+import java.util.List;
+
+/**
+ * Per-frame sprite draw order. Culls sprites behind the camera, off either screen edge, beyond the
+ * farthest wall or in tiles the map's PVS says can't be seen from the player's tile, then orders
+ * the survivors far-to-near by camera depth. The order is a permutation of list indices kept from
+ * the previous frame, so the insertion sort usually only fixes a few swaps.
+ * The sprite list itself is never reordered, and nothing is allocated once the arrays have grown.
+ */
+final class SpriteQueue {
+    private int[] order = new int[0];     // list indices: survivors (sorted) then culled, from last frame
+    private int[] scratch = new int[0];
+    private double[] depth = new double[0]; // camera-space depth (ty), by list index
+    private double[] across = new double[0]; // camera-space lateral offset (tx), by list index
+    private int tracked = -1;             // list size the permutation was built for
+    private int count;
+
+    /** Rebuilds the queue; returns the number of sprites to draw. */
+    int prepare(List<SpriteEntity> sprites, Player p, GameMap map, int screenW, int screenH, double maxDepth) {
+        int n = sprites.size();
+        if (n != tracked) reset(n);
+
+        double invDet = 1.0 / (p.planeX * p.dirY - p.dirX * p.planeY);
+        for (int i = 0; i < n; i++) {
+            SpriteEntity s = sprites.get(i);
+            double sx = s.x - p.x, sy = s.y - p.y;
+            across[i] = invDet * ( p.dirY * sx - p.dirX * sy);
+            depth[i]  = invDet * (-p.planeY * sx + p.planeX * sy);
+        }
+
+        // Stable partition of last frame's order: survivors first, culled after
+        int kept = 0, culled = 0;
+        for (int k = 0; k < n; k++) {
+            int i = order[k];
+            if (visible(across[i], depth[i], screenW, screenH, maxDepth)
+                    && map.mayBeVisible(p.x, p.y, sprites.get(i).x, sprites.get(i).y)) order[kept++] = i;
+            else scratch[culled++] = i;
+        }
+        System.arraycopy(scratch, 0, order, kept, culled);
+
+        // Insertion sort, farthest first; nearly sorted when the camera moved only a little
+        for (int k = 1; k < kept; k++) {
+            int i = order[k];
+            double d = depth[i];
+            int j = k - 1;
+            while (j >= 0 && depth[order[j]] < d) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = i;
+        }
+        count = kept;
+        return kept;
+    }
+
+    int size() { return count; }
+    /** List index of the k-th sprite to draw (far to near). */
+    int index(int k) { return order[k]; }
+    double depth(int listIndex) { return depth[listIndex]; }
+    double across(int listIndex) { return across[listIndex]; }
+
+    private static boolean visible(double tx, double ty, int screenW, int screenH, double maxDepth) {
+        if (ty <= 0.0001 || ty >= maxDepth) return false;
+        int screenX = (int) ((screenW / 2.0) * (1 + tx / ty));
+        int half = Math.abs((int) (screenH / ty)) / 2;
+        return screenX + half >= 0 && screenX - half < screenW;
+    }
+
+    private void reset(int n) {
+        if (order.length < n) {
+            int cap = Math.max(n, order.length * 2);
+            order = new int[cap];
+            scratch = new int[cap];
+            depth = new double[cap];
+            across = new double[cap];
+        }
+        for (int i = 0; i < n; i++) order[i] = i;
+        tracked = n;
+    }
+}
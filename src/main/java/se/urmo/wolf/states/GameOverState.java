@@ -32,6 +32,8 @@ public class GameOverState implements State {
 
     @Override
     public void render(Window window) {
+        // The fade builds up over the last play frame, frame after frame, as on a single buffer
+        window.keepLastFrame();
         var g2 = window.getFrameGraphics();
 
         float a = (float)Math.max(0.0, Math.min(1.0, time * 0.8));
@@ -52,7 +54,5 @@ public class GameOverState implements State {
         int h2w = g2.getFontMetrics().stringWidth(hint2);
         g2.drawString(hint1, (Game.WIDTH - h1w) / 2, Game.HEIGHT / 2 + 28);
         g2.drawString(hint2, (Game.WIDTH - h2w) / 2, Game.HEIGHT / 2 + 56);
-
-        g2.dispose();
     }
 }
\ No newline at end of file
@@ -84,7 +84,5 @@ public class LevelStartState implements State {
         String hint = "Press ENTER to skip • ESC for menu";
         int hw = g2.getFontMetrics().stringWidth(hint);
         g2.drawString(hint, (Game.WIDTH - hw) / 2, Game.HEIGHT - 28);
-
-        g2.dispose();
     }
 }
\ No newline at end of file
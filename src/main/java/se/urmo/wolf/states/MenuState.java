@@ -19,7 +19,7 @@ public class MenuState implements State {
             sm.set(new LevelStartState(sm, "maps/map1.txt", "FLOOR 1"));
         }
         if (input.wasPressed(KeyEvent.VK_ESCAPE)) {
-            System.exit(0);
+            sm.quit();
         }
     }
 
@@ -40,6 +40,5 @@ public class MenuState implements State {
         String hint = "Press ENTER to start • ESC to quit";
         int hw = g2.getFontMetrics().stringWidth(hint);
         g2.drawString(hint, (Game.WIDTH - hw)/2, Game.HEIGHT/2 + 20);
-        g2.dispose();
     }
 }
\ No newline at end of file
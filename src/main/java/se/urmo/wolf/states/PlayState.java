@@ -2,6 +2,8 @@ package se.urmo.wolf.states;
 
 import se.urmo.wolf.Game;
 import se.urmo.wolf.Window;
+import se.urmo.wolf.core.EventLog;
+import se.urmo.wolf.core.FrameProfiler;
 import se.urmo.wolf.core.Input;
 import se.urmo.wolf.core.State;
 import se.urmo.wolf.core.StateManager;
@@ -11,11 +13,16 @@ import se.urmo.wolf.entities.*;
 import se.urmo.wolf.render.Raycaster;
 import se.urmo.wolf.render.MinimapRenderer;
 import se.urmo.wolf.render.HudRenderer;
+import se.urmo.wolf.render.ProfilerOverlay;
+import se.urmo.wolf.render.ResolutionScaler;
 import se.urmo.wolf.gfx.Assets;
+import se.urmo.wolf.gfx.Blit;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,23 +33,38 @@ public class PlayState implements State {
     private final Player player;
     private final List<SpriteEntity> sprites = new ArrayList<>();
     private final Raycaster raycaster;
+    // Internal 3D resolution, lowered when frames run long; F4 pins it to native
+    private final ResolutionScaler resolution =
+            new ResolutionScaler(Game.WIDTH, Game.HEIGHT, Game.FIXED_DT * 1e9);
 
     private final MinimapRenderer minimapRenderer = new MinimapRenderer();
     private final HudRenderer hudRenderer = new HudRenderer();
+    // F3: frame-time graph and stage percentiles from the shared FrameProfiler
+    private final ProfilerOverlay profilerOverlay = new ProfilerOverlay();
+    private boolean showProfiler = false;
 
     private String currentMapPath = "maps/map1.txt";
     private double spawnX, spawnY;
 
     private double timeSeconds = 0.0;
     private boolean showMinimap = true;
+    private boolean fullMinimap = false;   // N: whole map instead of the area around the player
     private Input inputRef;
 
+    // F9 records the camera each update into camera-path.txt, for the headless Benchmark
+    private CameraPath.Recorder pathRecorder;
+
     private double shootCooldown = 0.25;
     private double shootTimer = 0.0;
     private static final double SHOOT_FOV_DEG = 7.5;
     private static final double SHOOT_MAX_DIST = 12.0;
 
     private static final double[] HANDGUN_FRAME_T = {0.05, 0.10, 0.18};
+    // Handgun frames pre-scaled once, so each frame is a plain blit
+    private static final double WEAPON_SCALE = 2.0;
+    private final BufferedImage handgunReady = weaponScaled(Assets.HANDGUN_READY);
+    private final BufferedImage handgunShot1 = weaponScaled(Assets.HANDGUN_SHOT1);
+    private final BufferedImage handgunShot2 = weaponScaled(Assets.HANDGUN_SHOT2);
     private double weaponAnimElapsed = 0.0;
     private boolean weaponAnimating = false;
 
@@ -61,16 +83,27 @@ public class PlayState implements State {
     private static final double FLASH_OUT = 0.60;
     private static final double DEATH_PAUSE = FLASH_IN + FLASH_HOLD + FLASH_OUT + 0.35;
     private float deathFlashAlpha = 0f;
+    private static final Color DEATH_FLASH = new Color(200, 20, 20);
 
     public PlayState(StateManager sm) {
+        this(sm, "maps/map1.txt");
+    }
+
+    /** Starts on the map at mapPath, resolved as MapLoader.load does. */
+    public PlayState(StateManager sm, String mapPath) {
         this.sm = sm;
         this.player = new Player(1, 1, null);
-        loadLevel(currentMapPath);
+        loadLevel(mapPath);
         this.prevPX = player.x;
         this.prevPY = player.y;
         this.raycaster = new Raycaster(Game.WIDTH, Game.HEIGHT);
     }
 
+    public Player getPlayer() { return player; }
+
+    /** The resolution scaler's current fraction of native size for the 3D view. */
+    public double renderScale() { return resolution.scale(); }
+
     public void setLevelPath(String path) {
         if (path != null && !path.isEmpty()) this.currentMapPath = path;
     }
@@ -107,6 +140,29 @@ public class PlayState implements State {
         if (input.wasPressed(KeyEvent.VK_ENTER)) tryOpenDoorInFront();
         if (input.wasPressed(KeyEvent.VK_SPACE)) tryShoot();
         if (input.wasPressed(KeyEvent.VK_M)) showMinimap = !showMinimap;
+        if (input.wasPressed(KeyEvent.VK_N)) fullMinimap = !fullMinimap;
+        if (input.wasPressed(KeyEvent.VK_F2)) raycaster.setDirectRaster(!raycaster.isDirectRaster());
+        if (input.wasPressed(KeyEvent.VK_F3)) showProfiler = !showProfiler;
+        if (input.wasPressed(KeyEvent.VK_F4)) resolution.setEnabled(!resolution.isEnabled());
+        if (input.wasPressed(KeyEvent.VK_F5)) {
+            raycaster.setFogDensity(raycaster.getFogDensity() > 0 ? 0.0 : Raycaster.DEFAULT_FOG_DENSITY);
+        }
+        if (input.wasPressed(KeyEvent.VK_F9)) toggleRecording();
+    }
+
+    private void toggleRecording() {
+        if (pathRecorder == null) {
+            pathRecorder = new CameraPath.Recorder();
+            return;
+        }
+        Path out = Path.of("camera-path.txt");
+        try {
+            pathRecorder.save(out);
+            System.out.println("Recorded " + pathRecorder.size() + " camera poses to " + out.toAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        pathRecorder = null;
     }
 
     private void tryOpenDoorInFront() {
@@ -116,7 +172,10 @@ public class PlayState implements State {
         double cx = tx + 0.5, cy = ty + 0.5;
         double dist2 = (cx - player.x) * (cx - player.x) + (cy - player.y) * (cy - player.y);
         if (dist2 > (1.6 * 1.6)) return;
-        if (map.isDoor(tx, ty)) map.openDoor(tx, ty);
+        if (map.isDoor(tx, ty)) {
+            map.openDoor(tx, ty);
+            EventLog.doorOpened(tx, ty);
+        }
     }
 
     private void tryShoot() {
@@ -127,6 +186,7 @@ public class PlayState implements State {
         weaponAnimElapsed = 0.0;
 
         Enemy target = acquireTarget();
+        EventLog.playerShot(target != null ? target.enemyId : -1, player.x, player.y);
         if (target != null) {
             target.takeDamage(1, player, timeSeconds);
         }
@@ -141,8 +201,8 @@ public class PlayState implements State {
         double viewLen = Math.hypot(dxView, dyView);
         double cosThresh = Math.cos(Math.toRadians(SHOOT_FOV_DEG));
 
-        for (SpriteEntity s : sprites) {
-            if (!(s instanceof Enemy e)) continue;
+        for (int i = 0; i < sprites.size(); i++) {
+            if (!(sprites.get(i) instanceof Enemy e)) continue;
             if (!e.isAlive()) continue;
 
             double dx = e.x - px, dy = e.y - py;
@@ -151,7 +211,7 @@ public class PlayState implements State {
 
             double dot = (dx * dxView + dy * dyView) / (dist * (viewLen == 0 ? 1 : viewLen));
             if (dot < cosThresh) continue;
-            if (!hasLineOfSight(px, py, e.x, e.y)) continue;
+            if (!map.hasLineOfSight(px, py, e.x, e.y)) continue;
 
             double aimErr = Math.acos(Math.max(-1, Math.min(1, dot)));
             double score = aimErr * 10.0 + dist * 0.01;
@@ -163,22 +223,6 @@ public class PlayState implements State {
         return best;
     }
 
-    private boolean hasLineOfSight(double ax, double ay, double bx, double by) {
-        double dx = bx - ax, dy = by - ay;
-        double len = Math.hypot(dx, dy);
-        if (len < 1e-6) return true;
-
-        double stepX = dx / len, stepY = dy / len;
-        double rx = ax, ry = ay;
-        int steps = (int) Math.ceil(len * 4.0);
-        for (int i = 0; i < steps; i++) {
-            rx += stepX * 0.25;
-            ry += stepY * 0.25;
-            if (map.isSolid((int) rx, (int) ry)) return false;
-        }
-        return true;
-    }
-
     @Override
     public void update(double dt) {
         timeSeconds += dt;
@@ -200,9 +244,12 @@ public class PlayState implements State {
 
         if (shootTimer > 0) shootTimer -= dt;
         if (inputRef != null) player.update(dt, inputRef);
+        if (pathRecorder != null) pathRecorder.add(player);
+        map.focus(player.x, player.y);
 
-        for (var s : sprites) {
-            if (s instanceof Enemy e) e.update(dt, map, player);
+        // Indexed: an iterator here would be the frame's only allocation
+        for (int i = 0; i < sprites.size(); i++) {
+            if (sprites.get(i) instanceof Enemy e) e.update(dt, map, player);
         }
         map.updateDoors(dt);
 
@@ -264,31 +311,49 @@ public class PlayState implements State {
 
     @Override
     public void render(Window window) {
+        // The scaler gets the whole of the last frame (input, update, render, overlays, present) as
+        // the game loop profiled it, less the time present sat waiting on the display
+        FrameProfiler profiler = sm.profiler();
+        int last = profiler.size() - 1;
+        if (last >= 0) resolution.frameTime(profiler.frameNanos(last) - window.lastPresentWaitNanos());
+
         var g2 = window.getFrameGraphics();
+        BufferedImage fb = window.getFramebuffer();
         BufferedImage weaponFrame = currentWeaponFrame();
 
-        // World (3D)
-        raycaster.render(window.getFramebuffer(), map, player, sprites, timeSeconds);
+        // World (3D), at the scaler's resolution and stretched to the window
+        raycaster.resize(resolution.width(), resolution.height());
+        BufferedImage scene = window.getSceneBuffer(resolution.width(), resolution.height());
+        raycaster.render(scene, map, player, sprites, timeSeconds);
+        long overlayStart = System.nanoTime();
+        profiler.add(FrameProfiler.Stage.FLOOR, raycaster.lastStageNanos(Raycaster.Stage.FLOOR));
+        profiler.add(FrameProfiler.Stage.WALLS, raycaster.lastStageNanos(Raycaster.Stage.WALLS));
+        profiler.add(FrameProfiler.Stage.SPRITES, raycaster.lastStageNanos(Raycaster.Stage.SPRITES));
+        window.upscaleScene(scene);
 
         // Overlays
-        if (showMinimap) {
-            minimapRenderer.render(g2, map, player, sprites, 8, 8, 160, 6);
+        if (showMinimap && fullMinimap) {
+            minimapRenderer.renderFull(g2, fb, map, player, sprites, 8, 8, 240);
+        } else if (showMinimap) {
+            minimapRenderer.render(g2, fb, map, player, sprites, 8, 8, 160, 6);
         }
-        hudRenderer.render(g2, player);
+        hudRenderer.render(g2, fb, player);
 
         // Weapon (drawn as an overlay; bobbing)
-        renderWeapon(g2, weaponFrame, weaponBobOffsetX(), weaponBobOffsetY());
+        renderWeapon(fb, weaponFrame, weaponBobOffsetX(), weaponBobOffsetY());
 
         // Death flash
         if (deathSequence && deathFlashAlpha > 0f) {
             Composite old = g2.getComposite();
             g2.setComposite(AlphaComposite.SrcOver.derive(deathFlashAlpha));
-            g2.setColor(new Color(200, 20, 20));
+            g2.setColor(DEATH_FLASH);
             g2.fillRect(0, 0, Game.WIDTH, Game.HEIGHT);
             g2.setComposite(old);
         }
 
-        g2.dispose();
+        if (showProfiler) profilerOverlay.render(g2, fb, profiler, Game.WIDTH - 8, 8);
+
+        profiler.add(FrameProfiler.Stage.OVERLAYS, System.nanoTime() - overlayStart);
     }
 
     private double weaponBobOffsetX() {
@@ -299,27 +364,29 @@ public class PlayState implements State {
         return Math.cos(weaponBobTime * 2.0) * BOB_AMP_Y * bobIntensity;
     }
 
-    private void renderWeapon(Graphics2D g2, BufferedImage weaponFrame, double bobX, double bobY) {
+    private void renderWeapon(BufferedImage fb, BufferedImage weaponFrame, double bobX, double bobY) {
         if (weaponFrame == null) return;
 
-        int imgW = weaponFrame.getWidth();
-        int imgH = weaponFrame.getHeight();
-
-        double scale = 2.0;
-        int drawW = (int) (imgW * scale);
-        int drawH = (int) (imgH * scale);
+        int drawW = weaponFrame.getWidth();
+        int drawH = weaponFrame.getHeight();
 
         int x = (int) ((Game.WIDTH - drawW) / 2 + bobX);
         int y = (int) ((Game.HEIGHT - drawH - 8) + bobY);
 
-        g2.drawImage(weaponFrame, x, y, drawW, drawH, null);
+        Blit.over(fb, weaponFrame, x, y);
     }
 
+    /** The current handgun frame, already scaled up to its on-screen size. */
     private BufferedImage currentWeaponFrame() {
-        if (!weaponAnimating) return Assets.HANDGUN_READY;
+        if (!weaponAnimating) return handgunReady;
         double t = weaponAnimElapsed;
-        if (t < HANDGUN_FRAME_T[0]) return Assets.HANDGUN_SHOT1;
-        if (t < HANDGUN_FRAME_T[1]) return Assets.HANDGUN_SHOT2;
-        return Assets.HANDGUN_READY;
+        if (t < HANDGUN_FRAME_T[0]) return handgunShot1;
+        if (t < HANDGUN_FRAME_T[1]) return handgunShot2;
+        return handgunReady;
+    }
+
+    private static BufferedImage weaponScaled(BufferedImage img) {
+        if (img == null) return null;
+        return Blit.resized(img, (int) (img.getWidth() * WEAPON_SCALE), (int) (img.getHeight() * WEAPON_SCALE));
     }
 }
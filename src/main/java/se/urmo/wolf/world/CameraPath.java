@@ -0,0 +1,151 @@
+package se.urmo.wolf.world;
+
+import se.urmo.wolf.entities.Player;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A sequence of camera poses (position + facing), one per frame. Either recorded from play
+ * (one pose per fixed update, text lines "x y dirX dirY") or scripted through a map.
+ */
+public final class CameraPath {
+    private static final int ROUTE_REACH = 512;
+    private final double[] xs, ys, dxs, dys;
+
+    private CameraPath(List<double[]> poses) {
+        int n = poses.size();
+        xs = new double[n]; ys = new double[n]; dxs = new double[n]; dys = new double[n];
+        for (int i = 0; i < n; i++) {
+            double[] q = poses.get(i);
+            xs[i] = q[0]; ys[i] = q[1]; dxs[i] = q[2]; dys[i] = q[3];
+        }
+    }
+
+    public int size() { return xs.length; }
+
+    /** Puts the player at pose frame (wrapping), keeping the current field of view. */
+    public void apply(int frame, Player p) {
+        int i = Math.floorMod(frame, xs.length);
+        double fov = Math.hypot(p.planeX, p.planeY);
+        p.x = xs[i]; p.y = ys[i];
+        p.dirX = dxs[i]; p.dirY = dys[i];
+        p.planeX = -p.dirY * fov;
+        p.planeY = p.dirX * fov;
+    }
+
+    public static CameraPath load(Path file) throws IOException {
+        List<double[]> poses = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split("\\s+");
+                poses.add(new double[] { Double.parseDouble(f[0]), Double.parseDouble(f[1]),
+                                         Double.parseDouble(f[2]), Double.parseDouble(f[3]) });
+            }
+        }
+        if (poses.isEmpty()) throw new IOException("Empty camera path: " + file);
+        return new CameraPath(poses);
+    }
+
+    /**
+     * Walks from the start tile to the farthest reachable tile (doors count as open, and the search
+     * stays within 512 tiles of the start) and back, at speed tiles per frame, facing along the route. A start with nowhere to go spins in place.
+     */
+    public static CameraPath scripted(GameMap map, double startX, double startY, double speed) {
+        List<int[]> route = farthestRoute(map, (int) startX, (int) startY);
+        List<double[]> poses = new ArrayList<>();
+        if (route.size() < 2) {
+            for (int i = 0; i < 360; i++) {
+                double a = Math.toRadians(i);
+                poses.add(new double[] { startX, startY, Math.cos(a), Math.sin(a) });
+            }
+            return new CameraPath(poses);
+        }
+        walk(route, speed, poses);
+        List<int[]> back = new ArrayList<>(route);
+        Collections.reverse(back);
+        walk(back, speed, poses);
+        return new CameraPath(poses);
+    }
+
+    private static void walk(List<int[]> route, double speed, List<double[]> out) {
+        double x = route.get(0)[0] + 0.5, y = route.get(0)[1] + 0.5;
+        double dx = 1, dy = 0;
+        for (int i = 1; i < route.size(); i++) {
+            double tx = route.get(i)[0] + 0.5, ty = route.get(i)[1] + 0.5;
+            while (true) {
+                double ex = tx - x, ey = ty - y, len = Math.hypot(ex, ey);
+                if (len < 1e-9) break;
+                // Ease the heading toward the segment so turns sweep across a few frames
+                dx += (ex / len - dx) * 0.25;
+                dy += (ey / len - dy) * 0.25;
+                double dl = Math.hypot(dx, dy);
+                dx /= dl; dy /= dl;
+                double s = Math.min(speed, len);
+                x += ex / len * s; y += ey / len * s;
+                out.add(new double[] { x, y, dx, dy });
+            }
+        }
+    }
+
+    private static List<int[]> farthestRoute(GameMap map, int sx, int sy) {
+        List<int[]> route = new ArrayList<>();
+        if (sx < 0 || sy < 0 || sx >= map.w || sy >= map.h) return route;
+        // Search a square of at most ROUTE_REACH tiles each way, so big maps need no map-sized arrays
+        int x0 = Math.max(0, sx - ROUTE_REACH), y0 = Math.max(0, sy - ROUTE_REACH);
+        int w = Math.min(map.w, sx + ROUTE_REACH + 1) - x0, h = Math.min(map.h, sy + ROUTE_REACH + 1) - y0;
+        int[] prev = new int[w * h];
+        Arrays.fill(prev, -2);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int start = (sy - y0) * w + (sx - x0);
+        prev[start] = -1;
+        queue.add(start);
+        int last = start;
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            last = c;
+            int cx = c % w, cy = c / w;
+            int[][] nbs = { {cx + 1, cy}, {cx - 1, cy}, {cx, cy + 1}, {cx, cy - 1} };
+            for (int[] nb : nbs) {
+                if (nb[0] < 0 || nb[1] < 0 || nb[0] >= w || nb[1] >= h) continue;
+                int n = nb[1] * w + nb[0];
+                if (prev[n] != -2 || map.at(x0 + nb[0], y0 + nb[1]) == 1) continue;
+                prev[n] = c;
+                queue.add(n);
+            }
+        }
+        for (int c = last; c != -1; c = prev[c]) route.add(0, new int[] { x0 + c % w, y0 + c / w });
+        return route;
+    }
+
+    /** Collects player poses during play and writes them in the format {@link #load} reads. */
+    public static final class Recorder {
+        private final StringBuilder sb = new StringBuilder();
+        private int count;
+
+        public void add(Player p) {
+            sb.append(String.format(Locale.ROOT, "%.5f %.5f %.5f %.5f%n", p.x, p.y, p.dirX, p.dirY));
+            count++;
+        }
+
+        public int size() { return count; }
+
+        public void save(Path file) throws IOException {
+            try (BufferedWriter bw = Files.newBufferedWriter(file)) {
+                bw.write(sb.toString());
+            }
+        }
+    }
+}
@@ -1,37 +1,229 @@
 package se.urmo.wolf.world;
 
+import java.util.Arrays;
+
 public class GameMap {
+    /** Texture id of door tiles: walls.png row 7, column 0. */
+    public static final int DOOR_TEXTURE = 7 * 8;
+
+    // One int per cell: tile code (0 floor, 1 wall, 2 door), a solid bit, the texture id and, for
+    // doors, the door's index into doors/doorProg. isSolid is then a single load and mask, and a
+    // door's solid bit is cleared when it finishes opening.
+    private static final int TYPE_MASK = 0x3;
+    private static final int SOLID = 1 << 2;
+    private static final int TEXTURE_SHIFT = 3, TEXTURE_MASK = 0xFF;
+    private static final int DOOR_SHIFT = 11;
+    private static final int MAX_DOORS = 1 << (32 - DOOR_SHIFT);
+
     public final int w, h;
-    private final int[][] grid;
+    // (w + 2) x (h + 2) cells, row by row, with a border of walls around the map. Cell 0, a border
+    // corner, is also what any coordinate further outside reads (see index)
+    private final int[] cells;
+    private final int stride;
 
-    // Door state arrays
-    private final double[][] doorProg; // 0..1 open progress
-    private final boolean[][] doorOpening;
+    // Door tiles as y * w + x, in scan order, so callers can visit doors without walking the grid
+    private final int[] doors;
+    private final double[] doorProg; // 0..1 open progress
+    private final boolean[] doorOpening;
+    // Indices of the doors still sliding open, so updateDoors doesn't walk every door each tick
+    private final int[] moving;
+    private int movingCount;
+    // Wall and door texture ids the map holds, as a bitset over 0..TEXTURE_MASK
+    private final long[] textures = new long[(TEXTURE_MASK + 1) / 64];
+    // Precomputed region-to-region visibility; null until set, which may come from the thread
+    // that builds it in the background
+    private volatile Pvs pvs;
 
+    /** A map whose walls all use texture 0. */
     public GameMap(int w, int h, int[][] grid) {
-        this.w = w; this.h = h; this.grid = grid;
-        doorProg = new double[h][w];
-        doorOpening = new boolean[h][w];
+        this(w, h, grid, null);
+    }
+
+    /** textures may be null, or give a wall texture id per tile; door tiles always use DOOR_TEXTURE. */
+    public GameMap(int w, int h, int[][] grid, int[][] textures) {
+        this.w = w; this.h = h;
+        stride = w + 2;
+        cells = border(w, h);
+        int n = 0;
+        for (int y = 0; y < h; y++) {
+            int[] row = grid[y], tex = textures != null ? textures[y] : null;
+            for (int x = 0, i = (y + 1) * stride + 1; x < w; x++, i++) {
+                int t = row[x];
+                cells[i] = cell(t, tex != null ? tex[x] : 0, n);
+                noteTexture(cells[i]);
+                if (t == 2) n++;
+            }
+        }
+        doors = doorList(n);
+        doorProg = new double[n];
+        doorOpening = new boolean[n];
+        moving = new int[n];
+    }
+
+    /**
+     * From the tile-code and texture planes of a .wmap file, w * h bytes each, row by row.
+     * @throws IllegalArgumentException on a tile code other than 0, 1 or 2
+     */
+    GameMap(int w, int h, byte[] tiles, byte[] textures) {
+        this.w = w; this.h = h;
+        stride = w + 2;
+        cells = border(w, h);
+        int n = 0;
+        for (int y = 0, s = 0; y < h; y++) {
+            for (int x = 0, i = (y + 1) * stride + 1; x < w; x++, i++, s++) {
+                int t = tiles[s];
+                cells[i] = cell(t, textures[s] & 0xFF, n);
+                noteTexture(cells[i]);
+                if (t == 2) n++;
+            }
+        }
+        doors = doorList(n);
+        doorProg = new double[n];
+        doorOpening = new boolean[n];
+        moving = new int[n];
+    }
+
+    /** For subclasses that keep their own tiles and override the tile and door queries. */
+    protected GameMap(int w, int h) {
+        this.w = w; this.h = h;
+        stride = 0;
+        cells = null;
+        doors = new int[0];
+        doorProg = new double[0];
+        doorOpening = new boolean[0];
+        moving = new int[0];
+    }
+
+    /** Cells for a w x h map, all walls with texture 0; the inside is filled in by the constructor. */
+    private static int[] border(int w, int h) {
+        long n = (long) (w + 2) * (h + 2);
+        if (n > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Map too big: " + w + "x" + h);
+        int[] cells = new int[(int) n];
+        Arrays.fill(cells, 1 | SOLID);
+        return cells;
+    }
+
+    /** The packed cell for tile code t with texture id tex; door is the door's index if t is a door. */
+    private static int cell(int t, int tex, int door) {
+        switch (t) {
+            case 0: return 0;
+            case 1: return 1 | SOLID | (tex & TEXTURE_MASK) << TEXTURE_SHIFT;
+            case 2:
+                if (door >= MAX_DOORS) throw new IllegalArgumentException("More than " + MAX_DOORS + " doors");
+                return 2 | SOLID | DOOR_TEXTURE << TEXTURE_SHIFT | door << DOOR_SHIFT;
+            default: throw new IllegalArgumentException("Bad tile code " + t);
+        }
+    }
+
+    private void noteTexture(int cell) {
+        if ((cell & TYPE_MASK) == 0) return;
+        int id = cell >>> TEXTURE_SHIFT & TEXTURE_MASK;
+        textures[id >>> 6] |= 1L << id;
+    }
+
+    private int[] doorList(int n) {
+        int[] list = new int[n];
+        for (int y = 0, k = 0; y < h && k < n; y++) {
+            for (int x = 0, i = (y + 1) * stride + 1; x < w; x++, i++) {
+                if ((cells[i] & TYPE_MASK) == 2) list[k++] = y * w + x;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Cell index of (x, y). Anything further out than the border maps to cell 0 through a mask on
+     * the sign bits rather than a compare per side, so it reads as a wall without a branch.
+     */
+    private int index(int x, int y) {
+        int outside = (x + 1 | y + 1 | w - x | h - y) >> 31;
+        return ((y + 1) * stride + x + 1) & ~outside;
     }
 
     public int at(int x, int y) {
-        if (x < 0 || y < 0 || x >= w || y >= h) return 1;
-        return grid[y][x];
+        return cells[index(x, y)] & TYPE_MASK;
+    }
+
+    /** Texture id of the wall or door at (x, y); outside the map reads as texture 0, like a wall. */
+    public int textureAt(int x, int y) {
+        return cells[index(x, y)] >>> TEXTURE_SHIFT & TEXTURE_MASK;
     }
 
+    /**
+     * Flags in used, indexed by texture id, every wall and door texture the map can show; ids past
+     * its end are skipped. The renderer prepares those tiles. {@link StreamingGameMap} reports the
+     * ones in the chunks it has loaded so far.
+     */
+    public void texturesInUse(boolean[] used) {
+        flagTextures(textures, used);
+    }
+
+    /** Changes whenever texturesInUse would flag more than it did; a map that holds all its tiles never changes. */
+    public int textureVersion() { return 0; }
+
+    static void flagTextures(long[] bits, boolean[] used) {
+        for (int i = 0; i < bits.length; i++) {
+            for (long v = bits[i]; v != 0; v &= v - 1) {
+                int id = (i << 6) + Long.numberOfTrailingZeros(v);
+                if (id < used.length) used[id] = true;
+            }
+        }
+    }
+
+    /**
+     * Where the player is, called from the game thread once per update before anything queries
+     * the map for the frame. A map that holds all its tiles ignores it; {@link StreamingGameMap}
+     * loads the chunks around it.
+     */
+    public void focus(double x, double y) {}
+
+    public Pvs pvs() { return pvs; }
+    public void setPvs(Pvs pvs) { this.pvs = pvs; }
+
+    /**
+     * Cheap rejection before a sprite or minimap marker is drawn: false only if the PVS says nothing
+     * in tile (toX, toY)'s cell can be seen from tile (fromX, fromY)'s. Without a PVS everything
+     * may be visible. AI and aiming use {@link #hasLineOfSight} alone, so the PVS never changes
+     * gameplay.
+     */
+    public boolean mayBeVisible(double fromX, double fromY, double toX, double toY) {
+        return pvs == null || pvs.isVisible(fromX, fromY, toX, toY);
+    }
+
+    /** Walls, and doors that aren't fully open; outside the map is solid. */
     public boolean isSolid(int x, int y) {
-        int t = at(x, y);
-        if (t == 1) return true;
-        if (t == 2) {
-            // solid if not fully open
-            return doorProg[y][x] < 1.0;
+        return (cells[index(x, y)] & SOLID) != 0;
+    }
+
+    /**
+     * True if nothing solid lies on the segment a -> b, marched in quarter-tile steps.
+     * Shared by enemy sight checks and the player's hitscan.
+     */
+    public boolean hasLineOfSight(double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double len = Math.hypot(dx, dy);
+        if (len < 1e-6) return true;
+
+        double stepX = dx / len, stepY = dy / len;
+        double rx = ax, ry = ay;
+        int steps = (int) Math.ceil(len * 4.0);
+        for (int i = 0; i < steps; i++) {
+            rx += stepX * 0.25;
+            ry += stepY * 0.25;
+            if (isSolid((int) rx, (int) ry)) return false;
         }
-        return false;
+        return true;
     }
 
     public boolean isDoor(int x, int y) { return at(x,y) == 2; }
-    public boolean isDoorOpen(int x, int y) { return doorProg[y][x] >= 1.0; }
-    public double getDoorProgress(int x, int y) { return doorProg[y][x]; }
+    public int doorCount() { return doors.length; }
+    public int doorX(int i) { return doors[i] % w; }
+    public int doorY(int i) { return doors[i] / w; }
+    public boolean isDoorOpen(int x, int y) { return getDoorProgress(x, y) >= 1.0; }
+    public double getDoorProgress(int x, int y) {
+        int c = cells[index(x, y)];
+        return (c & TYPE_MASK) == 2 ? doorProg[c >>> DOOR_SHIFT] : 0.0;
+    }
 
     // Determines if door is vertical (slides along Y) by checking walls layout.
     public boolean isDoorVertical(int x, int y) {
@@ -67,22 +259,26 @@ public class GameMap {
     }
 
     public void openDoor(int x, int y) {
-        if (!isDoor(x,y)) return;
-        doorOpening[y][x] = true;
+        int c = cells[index(x, y)];
+        if ((c & TYPE_MASK) != 2) return;
+        int i = c >>> DOOR_SHIFT;
+        if (doorOpening[i] || doorProg[i] >= 1.0) return;
+        doorOpening[i] = true;
+        moving[movingCount++] = i;
     }
 
     public void updateDoors(double dt) {
         double speed = 1.2; // tiles per second (approx)
-        for (int y=0;y<h;y++) for (int x=0;x<w;x++) {
-            if (grid[y][x] == 2) {
-                if (doorOpening[y][x]) {
-                    doorProg[y][x] += dt * speed;
-                    if (doorProg[y][x] >= 1.0) {
-                        doorProg[y][x] = 1.0;
-                        doorOpening[y][x] = false;
-                    }
-                }
+        for (int k = 0; k < movingCount; k++) {
+            int i = moving[k];
+            doorProg[i] += dt * speed;
+            if (doorProg[i] >= 1.0) {
+                doorProg[i] = 1.0;
+                doorOpening[i] = false;
+                int d = doors[i];
+                cells[(d / w + 1) * stride + d % w + 1] &= ~SOLID;
+                moving[k--] = moving[--movingCount];
             }
         }
     }
-}
\ No newline at end of file
+}
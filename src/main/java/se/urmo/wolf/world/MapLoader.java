@@ -1,20 +1,84 @@
 package se.urmo.wolf.world;
 
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
+/**
+ * Loads maps by classpath resource path, falling back to a file path. Names ending in .wmap are
+ * binary maps ({@link WmapFile}); anything else is a text map, one character per tile:
+ * '0' floor, '1'-'9' walls with texture ids 0-8, 'a'-'z' walls with texture ids 9-34,
+ * 'D' door, 'P' player start, 'G' guard. Texture ids index the walls.png sheet (row * 8 + col).
+ */
 public class MapLoader {
-    public static MapData load(String resourcePath) {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(
-                MapLoader.class.getResourceAsStream("/" + resourcePath)) )) {
+    // Binary maps with more tiles than this (4096 x 4096) are streamed rather than loaded whole
+    private static final long STREAM_TILES = 1L << 24;
+    // Maps with more tiles than this (about 90 x 90) build their PVS on a background thread; it takes
+    // seconds on big maps, and until it's there mayBeVisible answers true
+    private static final long BACKGROUND_PVS_TILES = 1L << 13;
+    // PVS per map path, done or still building: every respawn loads the same map again. A PVS is
+    // read-only once built, so maps can share it
+    private static final Map<String, CompletableFuture<Pvs>> PVS_CACHE = new HashMap<>();
+    private static final Executor PVS_BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "pvs-build");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    public static MapData load(String path) {
+        try {
+            MapData data = path.endsWith(WmapFile.EXTENSION) ? loadBinary(path) : loadText(path);
+            pvs(path, data.map).thenAccept(data.map::setPvs);   // at once if it's built already
+            return data;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load map: " + path, e);
+        }
+    }
+
+    /** The PVS for the map loaded from path, built the first time; map files don't change while the game runs. */
+    private static synchronized CompletableFuture<Pvs> pvs(String path, GameMap map) {
+        CompletableFuture<Pvs> pvs = PVS_CACHE.get(path);
+        if (pvs != null) return pvs;
+        if ((long) map.w * map.h > BACKGROUND_PVS_TILES) {
+            pvs = CompletableFuture.supplyAsync(() -> Pvs.build(map), PVS_BUILDER);
+            pvs.exceptionally(e -> {
+                System.err.println("No PVS for " + path + ": " + e);
+                return null;
+            });
+        } else {
+            pvs = CompletableFuture.completedFuture(Pvs.build(map));
+        }
+        PVS_CACHE.put(path, pvs);
+        return pvs;
+    }
+
+    /** Parses a text map without building its PVS. */
+    public static MapData loadText(String path) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(open(path)))) {
 
             List<String> lines = br.lines().map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList());
             int h = lines.size();
             int w = lines.get(0).length();
             int[][] grid = new int[h][w];
+            int[][] textures = new int[h][w];
 
             double px = 1.5, py = 1.5;
             List<MapData.Spawn> spawns = new ArrayList<>();
@@ -23,8 +87,9 @@ public class MapLoader {
                 String line = lines.get(y);
                 for (int x=0;x<w;x++) {
                     char c = line.charAt(x);
+                    if (c >= '1' && c <= '9') { grid[y][x] = 1; textures[y][x] = c - '1'; continue; }
+                    if (c >= 'a' && c <= 'z') { grid[y][x] = 1; textures[y][x] = 9 + (c - 'a'); continue; }
                     switch (c) {
-                        case '1': grid[y][x] = 1; break; // wall
                         case 'D': grid[y][x] = 2; break; // door
                         case 'P': px = x + 0.5; py = y + 0.5; grid[y][x]=0; break;
                         case 'G': spawns.add(new MapData.Spawn(MapData.Spawn.Type.GUARD, x+0.5, y+0.5)); grid[y][x]=0; break;
@@ -33,12 +98,50 @@ public class MapLoader {
                 }
             }
 
-            GameMap map = new GameMap(w, h, grid);
-            MapData data = new MapData(map, px, py);
+            MapData data = new MapData(new GameMap(w, h, grid, textures), px, py);
             data.spawns.addAll(spawns);
             return data;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to load map: " + resourcePath, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Memory-maps a .wmap file when it's on disk, or streams it in chunks when it's bigger than
+     * STREAM_TILES (-Dwolf.map.stream=true/false forces either way). A resource packed in a jar
+     * is read into memory.
+     */
+    private static MapData loadBinary(String path) throws IOException {
+        URL url = MapLoader.class.getResource("/" + path);
+        Path file;
+        if (url == null) {
+            file = Path.of(path);
+        } else if ("file".equals(url.getProtocol())) {
+            try {
+                file = Path.of(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        } else {
+            try (InputStream in = url.openStream()) {
+                return WmapFile.read(ByteBuffer.wrap(in.readAllBytes()));
+            }
+        }
+        return streams(file) ? StreamingGameMap.open(file) : WmapFile.read(file);
+    }
+
+    private static boolean streams(Path file) throws IOException {
+        String forced = System.getProperty("wolf.map.stream");
+        if (forced != null) return Boolean.parseBoolean(forced);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            WmapFile.Header header = WmapFile.header(ch);
+            return (long) header.w * header.h > STREAM_TILES;
+        }
+    }
+
+    private static InputStream open(String path) throws IOException {
+        InputStream in = MapLoader.class.getResourceAsStream("/" + path);
+        if (in != null) return in;
+        Path file = Path.of(path);
+        if (!Files.isRegularFile(file)) throw new FileNotFoundException(path);
+        return Files.newInputStream(file);
+    }
+}
@@ -0,0 +1,419 @@
+package se.urmo.wolf.world;
+
+import java.util.Arrays;
+
+/**
+ * Potentially visible set over regions: the map is cut into square cells of 2^k tiles, and every
+ * cell gets a bitset of the cells that can be seen from anywhere inside it. Cells are as small as
+ * the storage budget allows, one tile on maps up to about 75x75, so memory stays under MAX_BITS.
+ *
+ * <p>Built by sweeping families of parallel lines across the map at evenly spaced angles: every
+ * stretch of a line between two walls sees along itself, so all the cells it touches see each
+ * other, the walls at both ends included. Doors count as open, so the set holds whatever state the
+ * doors are in later.
+ *
+ * <p>It errs on the side of visible by construction, not by sampling densely enough:
+ * <ul>
+ * <li>{@link GameMap#hasLineOfSight} samples every quarter tile, all of them outside walls for a
+ * sight line it passes, so no point of that line is more than an eighth of a tile (SLIP) into a
+ * wall. A ray the renderer casts doesn't enter walls at all.</li>
+ * <li>Any segment up to the reach long lies within GAP of a swept line: half the line spacing plus
+ * a quarter of the reach times the angle step.</li>
+ * <li>Lines are traced against the walls shrunk by INSET, more than SLIP + GAP, on every side that
+ * faces open space. So the swept line next to a sight line gets past every wall the sight line
+ * does, and the stretch it marks reaches to within GAP of both ends.</li>
+ * <li>The result is grown by one cell on both sides. That takes in both ends of the sight line, and
+ * sprites, which are drawn up to half a tile to the side of their tile.</li>
+ * </ul>
+ *
+ * <p>The reach is the whole map where the build budget allows. Bigger maps are swept for a shorter
+ * reach, and tiles further apart than that answer true; maps that can't afford MIN_REACH get no
+ * PVS. Queries from outside the map, or from a cell no line saw anything from (solid rock), answer
+ * true.
+ */
+public final class Pvs {
+    // Bitset storage budget (4 MB): cells grow until cells^2 bits fit
+    private static final long MAX_BITS = 1L << 25;
+    // Build budget in trace steps, a couple of seconds; past it the reach shrinks
+    private static final double MAX_STEPS = 2e8;
+    // Below this reach, in tiles, a PVS culls too little to be worth building
+    private static final double MIN_REACH = 16;
+    // How far into a wall a sight line gets, and how far it can be from the nearest swept line
+    private static final double SLIP = 0.125, GAP = 0.36;
+    // How far the walls are shrunk for tracing: SLIP + GAP and a hair, so a swept line that grazes
+    // a shrunk wall still clears the walls the argument above needs. Under half a tile, so a wall
+    // one tile thick still stops lines
+    private static final double INSET = SLIP + GAP + 0.005;
+    // Each tile splits into 3x3 parts at these offsets; a part blocks entirely or not at all
+    private static final double[] EDGE = {0, INSET, 1 - INSET, 1};
+    private static final int ALL_PARTS = (1 << 9) - 1;
+    // Trace steps per tile of line: three parts per tile crossed, and about 1.27 tiles crossed per
+    // tile of length, averaged over the angles
+    private static final double STEPS_PER_TILE = 3.8;
+
+    private final int w, h;
+    private final int shift;      // cells are 1 << shift tiles square
+    private final int cellsX, cellsY;
+    private final int words;      // longs per set
+    private final long[] bits;    // cell c's set occupies bits[c * words .. (c + 1) * words)
+    private final long reachSq;   // tile pairs further apart answer true; Long.MAX_VALUE if none do
+
+    /** Working state of a build, dropped with it. */
+    private static final class Scratch {
+        final short[] parts;  // per tile of the map and a one-tile border, the 3x3 parts that block
+        final int[] run;      // cells of the stretch being traced
+        // Stretches marked at the current angle, with their cells kept in pool, so the parallel
+        // lines that cross exactly the same cells don't mark them again. Open addressing; a slot
+        // is live when its stamp is the current angle's
+        final long[] seenKey = new long[1 << 16];
+        final int[] seenStamp = new int[1 << 16];
+        final int[] seenAt = new int[1 << 16];
+        int[] pool = new int[1 << 16];
+        int pooled;
+        int stamp;
+
+        Scratch(short[] parts, int runLength) { this.parts = parts; this.run = new int[runLength]; }
+    }
+
+    private Pvs(int w, int h, int shift, double reach) {
+        this.w = w; this.h = h; this.shift = shift;
+        this.cellsX = ((w - 1) >> shift) + 1;
+        this.cellsY = ((h - 1) >> shift) + 1;
+        this.words = (cellsX * cellsY + 63) >>> 6;
+        this.bits = new long[cellsX * cellsY * words];
+        this.reachSq = Double.isInfinite(reach) ? Long.MAX_VALUE : (long) (reach * reach);
+    }
+
+    /**
+     * Builds the PVS for a map. Null for a {@link StreamingGameMap}, which doesn't get one, and for a
+     * map too big to sweep for MIN_REACH within the build budget.
+     */
+    public static Pvs build(GameMap map) {
+        if (map instanceof StreamingGameMap) return null;
+        int w = map.w, h = map.h;
+
+        // Lines GAP apart, and angles close enough that turning a segment reach long onto the
+        // nearest one moves its ends GAP / 2 at most; with half the spacing that's GAP in all.
+        // Every line crosses the whole bordered map, whatever the reach
+        double spacing = GAP;
+        double stepsPerAngle = (w + 2.0) * (h + 2.0) / spacing * STEPS_PER_TILE;
+        double full = Math.hypot(w + 2, h + 2);
+        double reach = Math.min(full, MAX_STEPS / stepsPerAngle * 2 * GAP / Math.PI);
+        if (reach < MIN_REACH) {
+            System.err.println("No PVS for a " + w + "x" + h + " map: it can't be swept for "
+                    + (int) MIN_REACH + " tiles within the build budget");
+            return null;
+        }
+        // A multiple of four starting at 0 includes both axes and diagonals exactly, which is where
+        // long lines of doors and corridors line up on a grid map
+        int angles = ((int) Math.ceil(Math.PI * reach / (2 * GAP)) + 3) & ~3;
+
+        int shift = 0;
+        while (cellCount(w, h, shift) * cellCount(w, h, shift) > MAX_BITS) shift++;
+        Pvs pvs = new Pvs(w, h, shift, reach < full ? reach : Double.POSITIVE_INFINITY);
+        Scratch sc = new Scratch(parts(map), 2 * ((w + h + 4) >> shift) + 8);
+        for (int a = 0; a < angles; a++) {
+            double t = a * Math.PI / angles;
+            sc.stamp = a + 1;
+            sc.pooled = 0;
+            pvs.sweep(sc, Math.cos(t), Math.sin(t), spacing);
+        }
+        pvs.dilate();
+        pvs.fillEmpty();
+        return pvs;
+    }
+
+    /**
+     * The shrunk walls over the map and a one-tile border of wall, as 3x3 parts per tile split at
+     * {@link #EDGE}. A part blocks if every tile within INSET of it is a wall: the middle part of
+     * any wall, an edge part if the tile across that edge is a wall too, and a corner part if all
+     * three tiles at that corner are.
+     */
+    private static short[] parts(GameMap map) {
+        int extW = map.w + 2, extH = map.h + 2;
+        boolean[] wall = new boolean[extW * extH];
+        for (int y = 0; y < extH; y++) {
+            for (int x = 0; x < extW; x++) {
+                wall[y * extW + x] = x == 0 || y == 0 || x == extW - 1 || y == extH - 1 || map.at(x - 1, y - 1) == 1;
+            }
+        }
+        short[] parts = new short[extW * extH];
+        for (int y = 0; y < extH; y++) {
+            for (int x = 0; x < extW; x++) {
+                if (!wall[y * extW + x]) continue;
+                int mask = 0;
+                for (int j = 0; j < 3; j++) {
+                    for (int i = 0; i < 3; i++) {
+                        boolean blocks = true;
+                        for (int ny = y - (j == 0 ? 1 : 0); ny <= y + (j == 2 ? 1 : 0) && blocks; ny++) {
+                            for (int nx = x - (i == 0 ? 1 : 0); nx <= x + (i == 2 ? 1 : 0) && blocks; nx++) {
+                                blocks = nx < 0 || ny < 0 || nx >= extW || ny >= extH || wall[ny * extW + nx];
+                            }
+                        }
+                        if (blocks) mask |= 1 << (j * 3 + i);
+                    }
+                }
+                parts[y * extW + x] = (short) mask;
+            }
+        }
+        return parts;
+    }
+
+    private static long cellCount(int w, int h, int shift) {
+        return (long) (((w - 1) >> shift) + 1) * (((h - 1) >> shift) + 1);
+    }
+
+    /** True if (toX, toY) may be visible from anywhere in tile (fromX, fromY). */
+    public boolean isVisible(int fromX, int fromY, int toX, int toY) {
+        if (fromX < 0 || fromY < 0 || fromX >= w || fromY >= h) return true;
+        if (toX < 0 || toY < 0 || toX >= w || toY >= h) return false;
+        // Nothing was swept past the reach. A sight line between the two tiles, or to a sprite
+        // half a tile to the side, is at most this long
+        long dx = Math.abs(fromX - toX) + 2, dy = Math.abs(fromY - toY) + 2;
+        if (dx * dx + dy * dy > reachSq) return true;
+        int s = (fromY >> shift) * cellsX + (fromX >> shift);
+        int t = (toY >> shift) * cellsX + (toX >> shift);
+        return (bits[s * words + (t >>> 6)] & (1L << t)) != 0;
+    }
+
+    /** Same as {@link #isVisible(int, int, int, int)} for world positions. */
+    public boolean isVisible(double fromX, double fromY, double toX, double toY) {
+        return isVisible((int) Math.floor(fromX), (int) Math.floor(fromY), (int) Math.floor(toX), (int) Math.floor(toY));
+    }
+
+    /** Tiles per cell side. */
+    public int cellSize() { return 1 << shift; }
+
+    /** Bytes of bitset storage. */
+    public long bytes() { return bits.length * 8L; }
+
+    /**
+     * Casts every line in direction (dx, dy), spacing tiles apart, that crosses the bordered map.
+     * The border takes the lines near sight lines that run along the map's edge.
+     */
+    private void sweep(Scratch sc, double dx, double dy, double spacing) {
+        int extW = w + 2, extH = h + 2;
+        // Offsets along the normal (-dy, dx) of the corners bound the family of lines
+        double o0 = Math.min(Math.min(0, -dy * extW), Math.min(dx * extH, dx * extH - dy * extW));
+        double o1 = Math.max(Math.max(0, -dy * extW), Math.max(dx * extH, dx * extH - dy * extW));
+        if (Math.abs(dx) <= 1e-12) dx = 0;
+        if (Math.abs(dy) <= 1e-12) dy = 0;
+        for (double o = o0 + spacing / 2; o < o1; o += spacing) {
+            double px = -dy * o, py = dx * o;
+            // Clip the line to the bordered map: t over [t0, t1] is inside on both axes
+            double t0 = -1e30, t1 = 1e30;
+            if (dx != 0) {
+                double a = -px / dx, b = (extW - px) / dx;
+                t0 = Math.max(t0, Math.min(a, b)); t1 = Math.min(t1, Math.max(a, b));
+            } else if (px <= 0 || px >= extW) continue;
+            if (dy != 0) {
+                double a = -py / dy, b = (extH - py) / dy;
+                t0 = Math.max(t0, Math.min(a, b)); t1 = Math.min(t1, Math.max(a, b));
+            } else if (py <= 0 || py >= extH) continue;
+            if (t1 - t0 < 1e-9) continue;
+            double tm = t0 + 1e-7;
+            trace(sc, px + tm * dx, py + tm * dy, dx, dy);
+        }
+    }
+
+    /**
+     * Walks the tiles under the line from (px, py), in bordered map coordinates, until it leaves the
+     * border. Each stretch between blocking tile parts, with the tiles that end it, marks all the
+     * cells it touches as seeing each other; a border tile counts as the map tile next to it.
+     */
+    private void trace(Scratch sc, double px, double py, double rx, double ry) {
+        short[] parts = sc.parts;
+        int[] run = sc.run;
+        int extW = w + 2, extH = h + 2;
+        int tileX = Math.min(extW - 1, (int) px), tileY = Math.min(extH - 1, (int) py);
+        double deltaX = rx == 0 ? 1e30 : Math.abs(1.0 / rx);
+        double deltaY = ry == 0 ? 1e30 : Math.abs(1.0 / ry);
+        int stepX = rx < 0 ? -1 : 1, stepY = ry < 0 ? -1 : 1;
+        double sideX = rx < 0 ? (px - tileX) * deltaX : (tileX + 1.0 - px) * deltaX;
+        double sideY = ry < 0 ? (py - tileY) * deltaY : (tileY + 1.0 - py) * deltaY;
+        double t = 0;   // where the line entered this tile
+        int n = 0;
+        boolean inWall = false;
+        while (true) {
+            int mapX = Math.min(w - 1, Math.max(0, tileX - 1)), mapY = Math.min(h - 1, Math.max(0, tileY - 1));
+            int c = (mapY >> shift) * cellsX + (mapX >> shift);
+            int blocking = parts[tileY * extW + tileX];
+            if (blocking != 0 && (blocking == ALL_PARTS
+                    || crosses(blocking, px + t * rx - tileX, py + t * ry - tileY, rx, ry, Math.min(sideX, sideY) - t))) {
+                if (!inWall) {
+                    if (n == 0 || run[n - 1] != c) run[n++] = c;
+                    mark(sc, n);
+                }
+                run[0] = c;
+                n = 1;
+                inWall = true;
+            } else {
+                if (n == 0 || run[n - 1] != c) run[n++] = c;
+                inWall = false;
+            }
+            if (sideX < sideY) {
+                t = sideX; sideX += deltaX; tileX += stepX;
+                if (tileX < 0 || tileX >= extW) break;
+            } else {
+                t = sideY; sideY += deltaY; tileY += stepY;
+                if (tileY < 0 || tileY >= extH) break;
+            }
+        }
+        if (!inWall) mark(sc, n);
+    }
+
+    /**
+     * Whether the line entering a tile at (fx, fy), relative to its corner, in direction (rx, ry)
+     * crosses one of its blocking parts before leaving it, length along the line later.
+     */
+    private static boolean crosses(int blocking, double fx, double fy, double rx, double ry, double length) {
+        fx = Math.min(1, Math.max(0, fx));
+        fy = Math.min(1, Math.max(0, fy));
+        int partX = part(fx), partY = part(fy);
+        while (true) {
+            if ((blocking >> (partY * 3 + partX) & 1) != 0) return true;
+            double toX = rx == 0 ? 1e30 : (EDGE[rx > 0 ? partX + 1 : partX] - fx) / rx;
+            double toY = ry == 0 ? 1e30 : (EDGE[ry > 0 ? partY + 1 : partY] - fy) / ry;
+            if (Math.min(toX, toY) >= length) return false;
+            if (toX < toY) {
+                partX += rx > 0 ? 1 : -1;
+                if (partX < 0 || partX > 2) return false;
+            } else {
+                partY += ry > 0 ? 1 : -1;
+                if (partY < 0 || partY > 2) return false;
+            }
+        }
+    }
+
+    /** Which of a tile's three parts along an axis the offset f (0..1) into it falls in. */
+    private static int part(double f) {
+        return f < EDGE[1] ? 0 : f <= EDGE[2] ? 1 : 2;
+    }
+
+    /** Every cell in sc.run[0 .. n) sees every other, unless this stretch was marked at this angle already. */
+    private void mark(Scratch sc, int n) {
+        int[] run = sc.run;
+        if (!firstAtAngle(sc, n)) return;
+        for (int i = 0; i < n; i++) {
+            int base = run[i] * words;
+            for (int j = 0; j < n; j++) {
+                int t = run[j];
+                bits[base + (t >>> 6)] |= 1L << t;
+            }
+        }
+    }
+
+    /**
+     * False if exactly the cells in sc.run[0 .. n) were marked at this angle already. A full table
+     * just stops remembering.
+     */
+    private static boolean firstAtAngle(Scratch sc, int n) {
+        int[] run = sc.run;
+        long key = ((long) run[0] << 32 | run[n - 1]) * 31 + n;
+        long[] seenKey = sc.seenKey;
+        int[] seenStamp = sc.seenStamp, seenAt = sc.seenAt;
+        int stamp = sc.stamp, mask = seenKey.length - 1;
+        int i = (int) (key * 0x9E3779B97F4A7C15L >>> 40) & mask;
+        for (int probes = 0; probes < 16; probes++, i = (i + 1) & mask) {
+            if (seenStamp[i] != stamp) {
+                if (sc.pooled + n > sc.pool.length) {
+                    sc.pool = Arrays.copyOf(sc.pool, Math.max(2 * sc.pool.length, sc.pooled + n));
+                }
+                System.arraycopy(run, 0, sc.pool, sc.pooled, n);
+                seenStamp[i] = stamp;
+                seenKey[i] = key;
+                seenAt[i] = sc.pooled;
+                sc.pooled += n;
+                return true;
+            }
+            if (seenKey[i] == key && Arrays.equals(sc.pool, seenAt[i], seenAt[i] + n, run, 0, n)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Grows every set by one cell in all eight directions, then ORs in the sets of the eight
+     * neighbouring cells, taking in the tiles around both ends of a sight line. Both steps keep the
+     * sets symmetric. Shifting the flat bitset by one wraps across row ends; that only adds bits,
+     * which is safe.
+     */
+    private void dilate() {
+        int cells = cellsX * cellsY;
+        long[] row = new long[words], tmp = new long[words];
+        for (int s = 0; s < cells; s++) {
+            int base = s * words;
+            System.arraycopy(bits, base, row, 0, words);
+            // Horizontal: row | row << 1 | row >> 1
+            for (int i = 0; i < words; i++) {
+                long v = row[i];
+                long carryUp = i > 0 ? row[i - 1] >>> 63 : 0;
+                long carryDown = i + 1 < words ? row[i + 1] << 63 : 0;
+                tmp[i] = v | (v << 1) | carryUp | (v >>> 1) | carryDown;
+            }
+            // Vertical: tmp | tmp << cellsX | tmp >> cellsX
+            System.arraycopy(tmp, 0, bits, base, words);
+            orShifted(tmp, cellsX, bits, base);
+            orShifted(tmp, -cellsX, bits, base);
+        }
+
+        long[] grown = new long[bits.length];
+        for (int cy = 0; cy < cellsY; cy++) {
+            for (int cx = 0; cx < cellsX; cx++) {
+                int base = (cy * cellsX + cx) * words;
+                for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsY - 1, cy + 1); ny++) {
+                    for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsX - 1, cx + 1); nx++) {
+                        int from = (ny * cellsX + nx) * words;
+                        for (int i = 0; i < words; i++) grown[base + i] |= bits[from + i];
+                    }
+                }
+            }
+        }
+        System.arraycopy(grown, 0, bits, 0, bits.length);
+    }
+
+    /** Cells nothing was seen from are inside solid rock; anything may be visible from them. */
+    private void fillEmpty() {
+        int cells = cellsX * cellsY;
+        for (int s = 0; s < cells; s++) {
+            int base = s * words;
+            boolean empty = true;
+            for (int i = 0; i < words && empty; i++) empty = bits[base + i] == 0;
+            if (empty) Arrays.fill(bits, base, base + words, -1L);
+        }
+    }
+
+    /**
+     * out[base ..] |= src shifted toward higher bit indices by n (lower if n is negative), a word at
+     * a time. Only cell bits of src move, and only onto cells: the unused tail of the last word is
+     * ignored on the way in and cleared on the way out.
+     */
+    private void orShifted(long[] src, int n, long[] out, int base) {
+        int wordShift = Math.abs(n) >>> 6, bitShift = Math.abs(n) & 63;
+        for (int i = 0; i < words; i++) {
+            long v;
+            if (n >= 0) {
+                int j = i - wordShift;
+                if (j < 0) continue;
+                v = word(src, j) << bitShift;
+                if (bitShift != 0 && j > 0) v |= word(src, j - 1) >>> (64 - bitShift);
+            } else {
+                int j = i + wordShift;
+                if (j >= words) break;
+                v = word(src, j) >>> bitShift;
+                if (bitShift != 0 && j + 1 < words) v |= word(src, j + 1) << (64 - bitShift);
+            }
+            if (i == words - 1) v &= tailMask();
+            out[base + i] |= v;
+        }
+    }
+
+    private long word(long[] src, int j) {
+        return j == words - 1 ? src[j] & tailMask() : src[j];
+    }
+
+    /** The bits of the last word of a set that stand for cells. */
+    private long tailMask() {
+        int used = (cellsX * cellsY) & 63;
+        return used == 0 ? -1L : (1L << used) - 1;
+    }
+}
@@ -0,0 +1,451 @@
+package se.urmo.wolf.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@link GameMap} over a .wmap file, holding only part of it. The world is cut into 64x64-tile
+ * chunks; {@link #focus} keeps the chunks within a radius of the player in memory, and a fixed
+ * number in all, evicting the least recently focused. Memory is bounded by that count whatever
+ * the world size.
+ *
+ * <p>A loader thread reads the ring of chunks just past the radius ahead of time, into spare
+ * chunks, through one channel the map keeps open for its life (closed when the map is collected).
+ * Walking on, the chunks the radius takes in are then already there; only a jump further than the
+ * ring, or the first focus, makes focus read on the game thread ({@link #chunkStalls}).
+ *
+ * <p>Chunks are only put in and evicted in focus, on the game thread. Between calls, queries are
+ * reads and may come from the render bands. A tile in a chunk that isn't loaded reads as a wall,
+ * like one outside the map, so rays and enemies far from the player stop at the loaded area. Doors
+ * keep their state across eviction; one still sliding when its chunk goes is left open.
+ *
+ * <p>There is no PVS: one covers the whole world, so its size would grow with it, and the loaded
+ * window already bounds what can be drawn.
+ */
+public final class StreamingGameMap extends GameMap {
+    private static final int SHIFT = 6, SIZE = 1 << SHIFT, MASK = SIZE - 1;
+    public static final int DEFAULT_RADIUS = 3;      // chunks around the player's, 7x7 = 448 tiles across
+    public static final int DEFAULT_CAPACITY = 128;  // chunks held, about 1 MB
+    private static final int PREFETCH = 1;           // rings of chunks read ahead past the radius
+
+    // Reads chunks for every streamed map; one thread, as they share a disk
+    private static final Executor LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "map-stream");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path file;
+    private final FileChannel ch;
+    private final long tilesAt, texturesAt;
+    private final int chunksX, chunksY;
+    private final int radius;
+
+    private final Chunk[] slots;
+    private final Chunk[] table;          // open addressing by chunk key; rebuilt whenever slots change
+    private final int tableMask;
+    private final long[] missing;         // chunk keys in the radius focus has to read itself
+    // Chunks for the loader to read into, ones it's reading, and ones read for focus to put in
+    private final ArrayDeque<Chunk> spare = new ArrayDeque<>();
+    private final Chunk[] reading;
+    private int readingCount;
+    private final Queue<Chunk> arrived = new ConcurrentLinkedQueue<>();
+    private final Map<Long, double[]> savedDoors = new HashMap<>();   // door progress of evicted chunks
+
+    // Doors in loaded chunks, for doorCount/doorX/doorY
+    private int[] doorXs = new int[64], doorYs = new int[64];
+    private int doorTotal;
+
+    // Texture ids in any chunk loaded so far, as a bitset; grows only, and textureVersion counts that
+    private final long[] texturesSeen = new long[4];
+    private int textureVersion;
+
+    private int focusCx = -1, focusCy = -1;
+    private long clock;
+    private long loads, stalls;
+
+    /** A chunk of tiles, reused for another chunk when evicted. */
+    private static final class Chunk {
+        long key = -1;
+        long lastUsed;
+        final byte[] tiles = new byte[SIZE * SIZE];
+        final byte[] textures = new byte[SIZE * SIZE];
+        final ByteBuffer tileBuf = ByteBuffer.wrap(tiles), textureBuf = ByteBuffer.wrap(textures);
+        // Door tiles as local indices (y * SIZE + x), sorted; progress and opening flag per door
+        short[] doorAt = new short[0];
+        double[] doorProg = new double[0];
+        boolean[] doorOpening = new boolean[0];
+        int doors;
+        IOException failed;   // from the loader thread, thrown by focus
+
+        int door(int local) {
+            return Arrays.binarySearch(doorAt, 0, doors, (short) local);
+        }
+    }
+
+    private StreamingGameMap(Path file, FileChannel ch, WmapFile.Header header, int radius, int capacity) {
+        super(header.w, header.h);
+        int reach = 2 * (radius + PREFETCH) + 1;
+        if (radius < 1 || capacity < reach * reach) {
+            throw new IllegalArgumentException("Need radius >= 1 and capacity >= " + reach * reach + " chunks");
+        }
+        this.file = file;
+        this.ch = ch;
+        this.tilesAt = header.tilesAt;
+        this.texturesAt = header.texturesAt;
+        this.chunksX = (w + MASK) >> SHIFT;
+        this.chunksY = (h + MASK) >> SHIFT;
+        this.radius = radius;
+        slots = new Chunk[capacity];
+        for (int i = 0; i < capacity; i++) slots[i] = new Chunk();
+        table = new Chunk[Integer.highestOneBit(capacity * 4 - 1) << 1];
+        tableMask = table.length - 1;
+        missing = new long[(2 * radius + 1) * (2 * radius + 1)];
+        reading = new Chunk[reach * reach - missing.length];
+        for (int i = 0; i < reading.length; i++) spare.push(new Chunk());
+    }
+
+    /** Opens a .wmap file with the default radius and capacity, focused on its player start. */
+    public static MapData open(Path file) throws IOException {
+        return open(file, DEFAULT_RADIUS, DEFAULT_CAPACITY);
+    }
+
+    /** Opens a .wmap file keeping radius chunks around the focus and at most capacity chunks loaded. */
+    public static MapData open(Path file, int radius, int capacity) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        WmapFile.Header header;
+        StreamingGameMap map;
+        try {
+            header = WmapFile.header(ch);
+            map = new StreamingGameMap(file, ch, header, radius, capacity);
+            map.focus(header.playerX, header.playerY);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+        MapData data = new MapData(map, header.playerX, header.playerY);
+        data.spawns.addAll(Arrays.asList(header.spawns));
+        return data;
+    }
+
+    /** Chunks in memory now. */
+    public int residentChunks() {
+        int n = 0;
+        for (Chunk c : slots) if (c.key >= 0) n++;
+        return n;
+    }
+
+    /** Chunks read from disk so far. */
+    public long chunkLoads() { return loads; }
+
+    /** Chunks focus had to read on the game thread because the loader hadn't brought them in. */
+    public long chunkStalls() { return stalls; }
+
+    // ---- Streaming ----------------------------------------------------------
+
+    /**
+     * Puts in the chunks the loader has read, reads any chunk within the radius of (x, y)'s chunk
+     * still missing, and hands the loader the missing ones in the ring past it.
+     */
+    @Override
+    public void focus(double x, double y) {
+        int cx = Math.max(0, Math.min(chunksX - 1, (int) Math.floor(x) >> SHIFT));
+        int cy = Math.max(0, Math.min(chunksY - 1, (int) Math.floor(y) >> SHIFT));
+        boolean moved = cx != focusCx || cy != focusCy;
+        if (!moved && arrived.isEmpty()) return;
+        int r = radius + PREFETCH;
+        if (moved) {
+            focusCx = cx; focusCy = cy;
+            long stamp = ++clock;
+            // Everything in reach is kept, so neither what arrives nor what's read evicts it
+            for (int ny = Math.max(0, cy - r); ny <= Math.min(chunksY - 1, cy + r); ny++) {
+                for (int nx = Math.max(0, cx - r); nx <= Math.min(chunksX - 1, cx + r); nx++) {
+                    Chunk c = chunk(nx, ny);
+                    if (c != null) c.lastUsed = stamp;
+                }
+            }
+        }
+
+        boolean changed = false;
+        for (Chunk c; (c = arrived.poll()) != null; ) changed |= arrive(c);
+        if (changed) rebuildTable();
+
+        int n = 0;
+        for (int ny = Math.max(0, cy - r); ny <= Math.min(chunksY - 1, cy + r); ny++) {
+            for (int nx = Math.max(0, cx - r); nx <= Math.min(chunksX - 1, cx + r); nx++) {
+                if (chunk(nx, ny) != null) continue;
+                long key = (long) ny * chunksX + nx;
+                if (Math.abs(nx - cx) <= radius && Math.abs(ny - cy) <= radius) missing[n++] = key;
+                else if (!isReading(key) && !spare.isEmpty()) request(spare.pop(), key);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            Chunk c = slots[victim()];
+            try {
+                read(c, missing[i]);
+                install(c, missing[i]);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to stream map chunk from " + file, e);
+            }
+            stalls++;
+        }
+        if (n > 0) rebuildTable();
+        if (changed || n > 0) rebuildDoorList();
+    }
+
+    private boolean isReading(long key) {
+        for (int i = 0; i < readingCount; i++) if (reading[i].key == key) return true;
+        return false;
+    }
+
+    /** Has the loader thread read chunk key into c, a spare, and queue it for focus. */
+    private void request(Chunk c, long key) {
+        c.key = key;
+        c.failed = null;
+        reading[readingCount++] = c;
+        LOADER.execute(() -> {
+            try {
+                read(c, key);
+            } catch (IOException e) {
+                c.failed = e;
+            }
+            arrived.add(c);
+        });
+    }
+
+    /**
+     * Puts a chunk from the loader in, in place of a victim that becomes a spare; true if it went
+     * in. One the player has since walked away from, or that focus read itself meanwhile, doesn't.
+     */
+    private boolean arrive(Chunk c) {
+        for (int i = 0; i < readingCount; i++) {
+            if (reading[i] == c) { reading[i] = reading[--readingCount]; break; }
+        }
+        long key = c.key;
+        int nx = (int) (key % chunksX), ny = (int) (key / chunksX);
+        int r = radius + PREFETCH;
+        boolean wanted = Math.abs(nx - focusCx) <= r && Math.abs(ny - focusCy) <= r && chunk(nx, ny) == null;
+        if (c.failed != null) {
+            throw new UncheckedIOException("Failed to stream map chunk from " + file, c.failed);
+        }
+        if (!wanted) {
+            c.key = -1;
+            spare.push(c);
+            return false;
+        }
+        int i = victim();
+        spare.push(slots[i]);
+        slots[i] = c;
+        try {
+            install(c, key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stream map chunk from " + file, e);
+        }
+        return true;
+    }
+
+    /** The index of an empty slot, or of the least recently used chunk out of reach, evicted. */
+    private int victim() {
+        int best = -1;
+        for (int i = 0; i < slots.length; i++) {
+            Chunk c = slots[i];
+            if (c.key < 0) return i;
+            if (c.lastUsed != clock && (best < 0 || c.lastUsed < slots[best].lastUsed)) best = i;
+        }
+        evict(slots[best]);
+        return best;
+    }
+
+    private void evict(Chunk c) {
+        boolean touched = false;
+        for (int i = 0; i < c.doors; i++) {
+            if (c.doorOpening[i]) { c.doorProg[i] = 1.0; c.doorOpening[i] = false; }
+            if (c.doorProg[i] > 0.0) touched = true;
+        }
+        if (touched) savedDoors.put(c.key, Arrays.copyOf(c.doorProg, c.doors));
+        c.key = -1;
+    }
+
+    /** Reads chunk key's tile and texture planes into c; past the map's edge is wall. Any thread. */
+    private void read(Chunk c, long key) throws IOException {
+        int x0 = (int) (key % chunksX) << SHIFT, y0 = (int) (key / chunksX) << SHIFT;
+        int cols = Math.min(SIZE, w - x0);
+        Arrays.fill(c.tiles, (byte) 1);
+        Arrays.fill(c.textures, (byte) 0);
+        for (int ly = 0; ly < SIZE && y0 + ly < h; ly++) {
+            long at = (long) (y0 + ly) * w + x0;
+            int off = ly << SHIFT;
+            WmapFile.readFully(ch, c.tileBuf.clear().position(off).limit(off + cols), tilesAt + at);
+            WmapFile.readFully(ch, c.textureBuf.clear().position(off).limit(off + cols), texturesAt + at);
+        }
+    }
+
+    /** Makes c, with planes just read, chunk key: checks its tiles and sets up its doors. */
+    private void install(Chunk c, long key) throws IOException {
+        int x0 = (int) (key % chunksX) << SHIFT, y0 = (int) (key / chunksX) << SHIFT;
+        int doors = 0;
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            int t = c.tiles[i];
+            if (t < 0 || t > 2) {
+                throw new IOException("Bad tile code " + t + " at " + (x0 + (i & MASK)) + "," + (y0 + (i >> SHIFT)));
+            }
+            if (t == 2) { c.textures[i] = (byte) DOOR_TEXTURE; doors++; }
+            if (t != 0) seeTexture(c.textures[i] & 0xFF);
+        }
+
+        if (c.doorAt.length < doors) {
+            int cap = Math.max(doors, c.doorAt.length * 2);
+            c.doorAt = new short[cap];
+            c.doorProg = new double[cap];
+            c.doorOpening = new boolean[cap];
+        }
+        c.doors = 0;
+        for (int i = 0; i < SIZE * SIZE && c.doors < doors; i++) if (c.tiles[i] == 2) c.doorAt[c.doors++] = (short) i;
+        Arrays.fill(c.doorProg, 0, doors, 0.0);
+        Arrays.fill(c.doorOpening, 0, doors, false);
+        double[] saved = savedDoors.remove(key);
+        if (saved != null) System.arraycopy(saved, 0, c.doorProg, 0, saved.length);
+
+        c.key = key;
+        c.lastUsed = clock;
+        loads++;
+    }
+
+    private void seeTexture(int id) {
+        long bit = 1L << id;
+        if ((texturesSeen[id >>> 6] & bit) != 0) return;
+        texturesSeen[id >>> 6] |= bit;
+        textureVersion++;
+    }
+
+    private void rebuildTable() {
+        Arrays.fill(table, null);
+        for (Chunk c : slots) {
+            if (c.key < 0) continue;
+            int i = hash(c.key) & tableMask;
+            while (table[i] != null) i = (i + 1) & tableMask;
+            table[i] = c;
+        }
+    }
+
+    private void rebuildDoorList() {
+        doorTotal = 0;
+        for (Chunk c : slots) {
+            if (c.key < 0) continue;
+            int x0 = (int) (c.key % chunksX) << SHIFT, y0 = (int) (c.key / chunksX) << SHIFT;
+            for (int i = 0; i < c.doors; i++) {
+                if (doorTotal == doorXs.length) {
+                    doorXs = Arrays.copyOf(doorXs, doorTotal * 2);
+                    doorYs = Arrays.copyOf(doorYs, doorTotal * 2);
+                }
+                doorXs[doorTotal] = x0 + (c.doorAt[i] & MASK);
+                doorYs[doorTotal++] = y0 + (c.doorAt[i] >> SHIFT);
+            }
+        }
+    }
+
+    /**
+     * The loaded chunk at chunk coordinates (cx, cy), or null. Only reads, so the render bands can
+     * share it; nearly always one probe, the table being at most a quarter full.
+     */
+    private Chunk chunk(int cx, int cy) {
+        long key = (long) cy * chunksX + cx;
+        for (int i = hash(key) & tableMask; ; i = (i + 1) & tableMask) {
+            Chunk c = table[i];
+            if (c == null) return null;
+            if (c.key == key) return c;
+        }
+    }
+
+    private static int hash(long key) {
+        long k = key * 0x9E3779B97F4A7C15L;
+        return (int) (k >>> 32);
+    }
+
+    // ---- GameMap queries ----------------------------------------------------
+
+    /** The textures of every chunk loaded so far, including ones since evicted. */
+    @Override
+    public void texturesInUse(boolean[] used) { flagTextures(texturesSeen, used); }
+
+    @Override
+    public int textureVersion() { return textureVersion; }
+
+    @Override
+    public int at(int x, int y) {
+        if (x < 0 || y < 0 || x >= w || y >= h) return 1;
+        Chunk c = chunk(x >> SHIFT, y >> SHIFT);
+        return c == null ? 1 : c.tiles[(y & MASK) << SHIFT | (x & MASK)];
+    }
+
+    @Override
+    public int textureAt(int x, int y) {
+        if (x < 0 || y < 0 || x >= w || y >= h) return 0;
+        Chunk c = chunk(x >> SHIFT, y >> SHIFT);
+        return c == null ? 0 : c.textures[(y & MASK) << SHIFT | (x & MASK)] & 0xFF;
+    }
+
+    @Override
+    public boolean isSolid(int x, int y) {
+        if (x < 0 || y < 0 || x >= w || y >= h) return true;
+        Chunk c = chunk(x >> SHIFT, y >> SHIFT);
+        if (c == null) return true;
+        int local = (y & MASK) << SHIFT | (x & MASK);
+        int t = c.tiles[local];
+        if (t == 1) return true;
+        return t == 2 && c.doorProg[c.door(local)] < 1.0;
+    }
+
+    @Override
+    public double getDoorProgress(int x, int y) {
+        if (x < 0 || y < 0 || x >= w || y >= h) return 0.0;
+        Chunk c = chunk(x >> SHIFT, y >> SHIFT);
+        if (c == null) return 0.0;
+        int i = c.door((y & MASK) << SHIFT | (x & MASK));
+        return i >= 0 ? c.doorProg[i] : 0.0;
+    }
+
+    @Override
+    public void openDoor(int x, int y) {
+        if (!isDoor(x, y)) return;
+        Chunk c = chunk(x >> SHIFT, y >> SHIFT);
+        c.doorOpening[c.door((y & MASK) << SHIFT | (x & MASK))] = true;
+    }
+
+    /** Slides the doors in loaded chunks; an evicted chunk's doors wait until it's loaded again. */
+    @Override
+    public void updateDoors(double dt) {
+        double speed = 1.2; // tiles per second, as in GameMap
+        for (Chunk c : slots) {
+            if (c.key < 0) continue;
+            for (int i = 0; i < c.doors; i++) {
+                if (!c.doorOpening[i]) continue;
+                c.doorProg[i] += dt * speed;
+                if (c.doorProg[i] >= 1.0) {
+                    c.doorProg[i] = 1.0;
+                    c.doorOpening[i] = false;
+                }
+            }
+        }
+    }
+
+    /** Doors in the loaded chunks; the numbering changes when focus loads chunks. */
+    @Override
+    public int doorCount() { return doorTotal; }
+    @Override
+    public int doorX(int i) { return doorXs[i]; }
+    @Override
+    public int doorY(int i) { return doorYs[i]; }
+}
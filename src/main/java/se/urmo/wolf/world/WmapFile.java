@@ -0,0 +1,151 @@
+package se.urmo.wolf.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary map format (.wmap), little-endian:
+ * <pre>
+ * "WMAP"  u16 version  u16 0  i32 w  i32 h  f64 playerX  f64 playerY
+ * i32 spawns, then per spawn: i32 type  f64 x  f64 y
+ * w*h bytes of tile codes (0 floor, 1 wall, 2 door), row by row
+ * w*h bytes of wall texture ids, row by row (ignored for doors and floor)
+ * </pre>
+ * Files are memory-mapped and the planes copied out in two bulk reads for {@link GameMap} to pack,
+ * so loading costs little more than building the map; {@link StreamingGameMap} instead reads
+ * chunks out of the planes as the player gets near them. Written from text maps by
+ * {@code se.urmo.wolf.MapConverter}.
+ */
+public final class WmapFile {
+    public static final String EXTENSION = ".wmap";
+    private static final int MAGIC = 'W' | 'M' << 8 | 'A' << 16 | 'P' << 24;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 36;   // through the spawn count
+    private static final int SPAWN_BYTES = 20;
+    private static final MapData.Spawn.Type[] SPAWN_TYPES = MapData.Spawn.Type.values();
+
+    private WmapFile() {}
+
+    /** Maps file and decodes it. The map comes back without a PVS; {@link MapLoader} adds one. */
+    public static MapData read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /** Decodes a whole .wmap image, e.g. a resource read from a jar that can't be mapped. */
+    public static MapData read(ByteBuffer buf) throws IOException {
+        buf = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        Header hd = parseHeader(buf, buf.remaining());
+        int w = hd.w, h = hd.h;
+        int n = Math.multiplyExact(w, h);
+        byte[] tiles = new byte[n], textures = new byte[n];
+        buf.get((int) hd.tilesAt, tiles);
+        buf.get((int) hd.texturesAt, textures);
+        GameMap map;
+        try {
+            map = new GameMap(w, h, tiles, textures);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt .wmap: " + e.getMessage());
+        }
+
+        MapData data = new MapData(map, hd.playerX, hd.playerY);
+        for (MapData.Spawn s : hd.spawns) data.spawns.add(s);
+        return data;
+    }
+
+    /** Everything ahead of the tile planes, and where the planes start in the file. */
+    static final class Header {
+        final int w, h;
+        final double playerX, playerY;
+        final MapData.Spawn[] spawns;
+        final long tilesAt, texturesAt;   // byte offsets of the two planes, each w * h bytes
+
+        private Header(int w, int h, double playerX, double playerY, MapData.Spawn[] spawns, long tilesAt) {
+            this.w = w; this.h = h; this.playerX = playerX; this.playerY = playerY; this.spawns = spawns;
+            this.tilesAt = tilesAt;
+            this.texturesAt = tilesAt + (long) w * h;
+        }
+    }
+
+    /** Reads and checks the header of an open .wmap file without touching the tile planes. */
+    static Header header(FileChannel ch) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, fixed, 0);
+        int spawns = fixed.getInt(HEADER_BYTES - 4);
+        if (spawns < 0 || (long) spawns * SPAWN_BYTES > ch.size()) {
+            throw new IOException("Corrupt .wmap: " + spawns + " spawns");
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + spawns * SPAWN_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, buf, 0);
+        buf.flip();
+        return parseHeader(buf, ch.size());
+    }
+
+    /** Reads dst.remaining() bytes at position; fewer are there only if the file is truncated. */
+    static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, position);
+            if (n < 0) throw new IOException("Truncated .wmap file");
+            position += n;
+        }
+    }
+
+    /** Parses the header at the start of buf (positioned at 0), for a file of size bytes. */
+    private static Header parseHeader(ByteBuffer buf, long size) throws IOException {
+        if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC) throw new IOException("Not a .wmap file");
+        short version = buf.getShort();
+        if (version != VERSION) throw new IOException("Unsupported .wmap version " + version);
+        buf.getShort();
+        int w = buf.getInt(), h = buf.getInt();
+        double px = buf.getDouble(), py = buf.getDouble();
+        int spawns = buf.getInt();
+        long tilesAt = HEADER_BYTES + (long) spawns * SPAWN_BYTES;
+        if (w <= 0 || h <= 0 || spawns < 0 || size != tilesAt + 2L * w * h) {
+            throw new IOException("Corrupt .wmap: " + w + "x" + h + ", " + spawns + " spawns, "
+                    + (size - HEADER_BYTES) + " bytes after the header");
+        }
+
+        MapData.Spawn[] spawnList = new MapData.Spawn[spawns];
+        for (int i = 0; i < spawns; i++) {
+            int type = buf.getInt();
+            if (type < 0 || type >= SPAWN_TYPES.length) throw new IOException("Unknown spawn type " + type);
+            spawnList[i] = new MapData.Spawn(SPAWN_TYPES[type], buf.getDouble(), buf.getDouble());
+        }
+        return new Header(w, h, px, py, spawnList, tilesAt);
+    }
+
+    /** Writes data as a .wmap file, replacing file if it exists. */
+    public static void write(Path file, MapData data) throws IOException {
+        GameMap map = data.map;
+        int w = map.w, h = map.h;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + data.spawns.size() * SPAWN_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(w).putInt(h)
+                .putDouble(data.playerStartX).putDouble(data.playerStartY)
+                .putInt(data.spawns.size());
+        for (MapData.Spawn s : data.spawns) header.putInt(s.type.ordinal()).putDouble(s.x).putDouble(s.y);
+        header.flip();
+
+        ByteBuffer tiles = ByteBuffer.allocate(w * h), textures = ByteBuffer.allocate(w * h);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int t = map.at(x, y);
+                tiles.put((byte) t);
+                textures.put((byte) (t == 1 ? map.textureAt(x, y) : 0));
+            }
+        }
+        tiles.flip();
+        textures.flip();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] parts = { header, tiles, textures };
+            while (tiles.hasRemaining() || textures.hasRemaining() || header.hasRemaining()) ch.write(parts);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package se.urmo.wolf;
+
+import se.urmo.wolf.core.EventLog;
+import se.urmo.wolf.core.Input;
+import se.urmo.wolf.core.StateManager;
+import se.urmo.wolf.gfx.Assets;
+import se.urmo.wolf.states.PlayState;
+import se.urmo.wolf.world.GameMap;
+import se.urmo.wolf.world.MapData;
+import se.urmo.wolf.world.MapLoader;
+import se.urmo.wolf.world.WmapFile;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Allocation regression check: runs PlayState's input/update/render loop headlessly on an offscreen
+ * Window, walking, turning and shooting, and measures the bytes the game thread allocates per frame
+ * once warmed up. Exits with status 1 if the average goes over the budget; mvn verify runs it and
+ * fails the build on that (skip with -Dwolf.alloc.skip).
+ *
+ * <p>The level is map1 with extra guards placed around the player start, so enemy AI, sprite
+ * sorting and the shot and hit paths run every frame, and the event log records at trace level
+ * unless -Dwolf.log.level says otherwise. The player is healed each frame so a death (which
+ * reloads the level) never lands in the measured frames, and F4 pins native resolution so the
+ * scaler never steps.
+ *
+ * <p>--transitions checks those two instead, which allocate by design but shouldn't without
+ * bound. It makes frames slow until the scaler steps down twice and fast until it's back at native,
+ * twice over: each step may allocate one native-size scene buffer plus the step budget. Then the
+ * player dies twice: each death and level reload, the frames from death to the first frame after
+ * respawn, may allocate the reload budget. A reload rebuilding the PVS or the fogged textures
+ * (several MB each on map1) would go far over it.
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes se.urmo.wolf.AllocationCheck [--frames 600] [--warmup 600] [--budget 64] [--guards 12]
+ *     [--transitions] [--step-budget 65536] [--reload-budget 524288]
+ * </pre>
+ */
+public final class AllocationCheck {
+    private int frames = 600, warmup = 600;
+    private long budget = 64;   // bytes per frame, averaged over the measured frames
+    private int guards = 12;    // added to the map's own, on open tiles around the player start
+    private boolean transitions;
+    private long stepBudget = 64 << 10;     // bytes per scaler step over one native scene buffer
+    private long reloadBudget = 512 << 10;  // bytes per death and level reload
+
+    private Window window;
+    private StateManager sm;
+    private PlayState play;
+    private Input input;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        AllocationCheck c = new AllocationCheck();
+        c.parse(args);
+        System.exit(c.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--frames" -> frames = Integer.parseInt(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--budget" -> budget = Long.parseLong(args[++i]);
+                case "--guards" -> guards = Integer.parseInt(args[++i]);
+                case "--transitions" -> transitions = true;
+                case "--step-budget" -> stepBudget = Long.parseLong(args[++i]);
+                case "--reload-budget" -> reloadBudget = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private boolean run() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counting is not supported by this JVM; nothing checked");
+            return true;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Path mapFile, logFile = null;
+        try {
+            mapFile = writeGuardedMap();
+            if (System.getProperty("wolf.log.level") == null) {
+                logFile = Files.createTempFile("alloc-check", ".jsonl");
+                System.setProperty("wolf.log.level", "trace");
+                System.setProperty("wolf.log.file", logFile.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            start(mapFile);
+            boolean ok = transitions ? measureTransitions(threads) : measure(threads);
+            window.dispose();
+            return ok;
+        } finally {
+            EventLog.close();
+            try {
+                Files.deleteIfExists(mapFile);
+                if (logFile != null) Files.deleteIfExists(logFile);
+            } catch (IOException e) {
+                System.err.println("Couldn't remove temporary files: " + e);
+            }
+        }
+    }
+
+    /** map1 plus the extra guards, as a temporary .wmap for PlayState to load. */
+    private Path writeGuardedMap() throws IOException {
+        MapData data = MapLoader.loadText("maps/map1.txt");
+        GameMap map = data.map;
+        int sx = (int) data.playerStartX, sy = (int) data.playerStartY;
+        int placed = 0;
+        // Rings outward from the start, every third open tile, so they're spread across nearby rooms
+        for (int r = 3, n = 0; r < Math.max(map.w, map.h) && placed < guards; r++) {
+            for (int y = sy - r; y <= sy + r && placed < guards; y++) {
+                for (int x = sx - r; x <= sx + r && placed < guards; x++) {
+                    if (Math.max(Math.abs(x - sx), Math.abs(y - sy)) != r || map.at(x, y) != 0) continue;
+                    if (n++ % 3 != 0) continue;
+                    data.spawns.add(new MapData.Spawn(MapData.Spawn.Type.GUARD, x + 0.5, y + 0.5));
+                    placed++;
+                }
+            }
+        }
+        Path file = Files.createTempFile("alloc-check", WmapFile.EXTENSION);
+        WmapFile.write(file, data);
+        return file;
+    }
+
+    private void start(Path mapFile) {
+        EventLog.start();
+        Assets.init();
+        window = Window.offscreen(Game.WIDTH, Game.HEIGHT);
+        sm = new StateManager();
+        play = new PlayState(sm, mapFile.toString());
+        sm.set(play);
+        input = window.getInput();
+    }
+
+    private boolean measure(com.sun.management.ThreadMXBean threads) {
+        for (int f = 0; f < warmup; f++) frame(f, 0);
+
+        long worst = 0;
+        int allocating = 0;
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (int f = warmup; f < warmup + frames; f++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            frame(f, 0);
+            long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+            if (bytes > 0) allocating++;
+            if (bytes > worst) worst = bytes;
+        }
+        long total = threads.getCurrentThreadAllocatedBytes() - start;
+
+        double perFrame = (double) total / frames;
+        boolean ok = perFrame <= budget;
+        System.out.printf(Locale.ROOT, "frames=%d warmup=%d guards=+%d%n", frames, warmup, guards);
+        System.out.printf(Locale.ROOT, "allocated %.1f bytes/frame (budget %d), %d frames allocated, worst %d bytes%n",
+                perFrame, budget, allocating, worst);
+        System.out.println(ok ? "OK" : "FAIL: over allocation budget");
+        return ok;
+    }
+
+    private boolean measureTransitions(com.sun.management.ThreadMXBean threads) {
+        int f = 0;
+        for (; f < warmup; f++) frame(f, 0);
+        long sceneBytes = 4L * Game.WIDTH * Game.HEIGHT;
+
+        // Scaler: slow frames (over the 60 Hz budget) step it down, fast ones back up
+        long worstStep = 0;
+        int steps = 0;
+        for (int cycle = 0; cycle < 2; cycle++) {
+            for (int down = 0; down < 2; down++) {
+                for (int n = 0; n < 200; n++) {
+                    long bytes = stepFrame(threads, f++, 25);
+                    if (bytes >= 0) { worstStep = Math.max(worstStep, bytes); steps++; break; }
+                }
+            }
+            for (int n = 0; n < 2000 && play.renderScale() < 1.0; n++) {
+                long bytes = stepFrame(threads, f++, 0);
+                if (bytes >= 0) { worstStep = Math.max(worstStep, bytes); steps++; }
+            }
+        }
+        boolean stepsOk = steps == 8 && worstStep <= sceneBytes + stepBudget;
+
+        // Deaths: damage the player and run frames until the level has reloaded and play goes on
+        long worstReload = 0;
+        int reloads = 0;
+        for (int death = 0; death < 2; death++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            play.getPlayer().takeDamage(100);
+            for (int n = 0; n < 600 && play.getPlayer().isDead(); n++) frame(f++, 0);
+            if (play.getPlayer().isDead()) break;
+            frame(f++, 0);
+            worstReload = Math.max(worstReload, threads.getCurrentThreadAllocatedBytes() - before);
+            reloads++;
+        }
+        boolean reloadsOk = reloads == 2 && worstReload <= reloadBudget;
+
+        System.out.printf(Locale.ROOT, "warmup=%d guards=+%d%n", warmup, guards);
+        System.out.printf(Locale.ROOT, "scaler: %d steps, worst %d bytes (budget %d + %d scene)%n",
+                steps, worstStep, stepBudget, sceneBytes);
+        System.out.printf(Locale.ROOT, "reload: %d deaths, worst %d bytes (budget %d)%n",
+                reloads, worstReload, reloadBudget);
+        if (steps != 8) System.out.println("FAIL: the scaler didn't step down twice and back up twice over");
+        else if (!stepsOk) System.out.println("FAIL: a scaler step is over its allocation budget");
+        if (reloads != 2) System.out.println("FAIL: the level didn't reload after each death");
+        else if (!reloadsOk) System.out.println("FAIL: a level reload is over its allocation budget");
+        if (stepsOk && reloadsOk) System.out.println("OK");
+        return stepsOk && reloadsOk;
+    }
+
+    /** Bytes frame f allocated if the scaler stepped in it, else -1. */
+    private long stepFrame(com.sun.management.ThreadMXBean threads, int f, long sleepMillis) {
+        double scale = play.renderScale();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        frame(f, sleepMillis);
+        long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+        return play.renderScale() != scale ? bytes : -1;
+    }
+
+    /**
+     * One Game.run iteration with a fixed update, holding W and D and tapping fire and use; it
+     * sleeps for sleepMillis inside the profiled frame, to make it slow. The F3 profiler overlay
+     * stays off; it rebuilds its text twice a second by design.
+     */
+    private void frame(int f, long sleepMillis) {
+        window.poll();
+        play.getPlayer().heal(100);
+        // F4 pins native resolution, unless checking transitions: a scaler step reallocates the scene
+        // buffer, which isn't steady state
+        if (f == 0) { if (!transitions) input.press(KeyEvent.VK_F4); input.press(KeyEvent.VK_W); input.press(KeyEvent.VK_D); }
+        if (f == 1) input.release(KeyEvent.VK_F4);
+        if (f % 30 == 0) input.press(KeyEvent.VK_SPACE); else input.release(KeyEvent.VK_SPACE);
+        if (f % 45 == 0) input.press(KeyEvent.VK_ENTER); else input.release(KeyEvent.VK_ENTER);
+        sm.profiler().beginFrame();
+        sm.handleInput(input);
+        sm.update(Game.FIXED_DT);
+        sm.render(window);
+        window.present();
+        if (sleepMillis > 0) {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sm.profiler().endFrame();
+    }
+}
@@ -0,0 +1,120 @@
+package se.urmo.wolf.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * PVS regression check: the PVS must never cull what {@link GameMap#hasLineOfSight} can see. Builds
+ * the PVS of map1, with its doors opened, and of random maps (each tile a wall with some
+ * probability), then tests random pairs of points anywhere inside open tiles. A pair counts as seen
+ * if the sight line reaches the target or a point up to half a tile to its side, as a sprite
+ * billboard is drawn. Every seen pair whose tiles the PVS says can't see each other is a miss; exits
+ * with status 1 on any. mvn verify runs it (skip with -Dwolf.pvs.skip).
+ *
+ * <p>Half the targets are within 12 tiles of the source, so short sight lines, the common ones
+ * around corners, are tested densely.
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes se.urmo.wolf.world.PvsCheck [--pairs 1000000] [--seed 1]
+ * </pre>
+ */
+public final class PvsCheck {
+    private int pairs = 1_000_000;   // per map
+    private long seed = 1;
+
+    public static void main(String[] args) {
+        PvsCheck c = new PvsCheck();
+        c.parse(args);
+        System.exit(c.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--pairs" -> pairs = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (pairs < 1) throw new IllegalArgumentException("--pairs must be at least 1: " + pairs);
+    }
+
+    private boolean run() {
+        GameMap map1;
+        try {
+            map1 = MapLoader.loadText("maps/map1.txt").map;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int i = 0; i < map1.doorCount(); i++) map1.openDoor(map1.doorX(i), map1.doorY(i));
+        map1.updateDoors(60);
+
+        Random rnd = new Random(seed);
+        boolean ok = check("map1, doors open", map1, rnd);
+        ok &= check("random 64x64, 30% walls", random(64, 64, 0.30, rnd), rnd);
+        ok &= check("random 64x64, 45% walls", random(64, 64, 0.45, rnd), rnd);
+        ok &= check("random 300x300, 35% walls", random(300, 300, 0.35, rnd), rnd);
+        System.out.println(ok ? "OK" : "FAILED: the PVS culls pairs that can see each other");
+        return ok;
+    }
+
+    private static GameMap random(int w, int h, double walls, Random rnd) {
+        int[][] grid = new int[h][w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) grid[y][x] = rnd.nextDouble() < walls ? 1 : 0;
+        }
+        return new GameMap(w, h, grid);
+    }
+
+    private boolean check(String name, GameMap map, Random rnd) {
+        long t0 = System.nanoTime();
+        Pvs pvs = Pvs.build(map);
+        long buildMs = (System.nanoTime() - t0) / 1_000_000;
+        if (pvs == null) {
+            System.out.printf(Locale.ROOT, "%-28s no PVS built%n", name);
+            return false;
+        }
+        int[] open = new int[map.w * map.h];
+        int opens = 0;
+        for (int y = 0; y < map.h; y++) {
+            for (int x = 0; x < map.w; x++) if (!map.isSolid(x, y)) open[opens++] = y * map.w + x;
+        }
+
+        long seen = 0, unseen = 0, culled = 0, missed = 0;
+        for (int i = 0; i < pairs; i++) {
+            int a = open[rnd.nextInt(opens)];
+            double ax = a % map.w + rnd.nextDouble(), ay = a / map.w + rnd.nextDouble();
+            double bx, by;
+            if ((i & 1) == 0) {
+                int b = open[rnd.nextInt(opens)];
+                bx = b % map.w + rnd.nextDouble(); by = b / map.w + rnd.nextDouble();
+            } else {
+                bx = ax + (rnd.nextDouble() - 0.5) * 24; by = ay + (rnd.nextDouble() - 0.5) * 24;
+                if (bx < 0 || by < 0 || bx >= map.w || by >= map.h || map.isSolid((int) bx, (int) by)) continue;
+            }
+            // A point on the billboard, across the line of sight from its centre
+            double dx = bx - ax, dy = by - ay, len = Math.hypot(dx, dy);
+            double side = len < 1e-9 ? 0 : (rnd.nextDouble() - 0.5) / len;
+            double sx = bx - dy * side, sy = by + dx * side;
+
+            boolean visible = pvs.isVisible(ax, ay, bx, by);
+            if (map.hasLineOfSight(ax, ay, bx, by) || map.hasLineOfSight(ax, ay, sx, sy)) {
+                seen++;
+                if (!visible) {
+                    if (missed++ < 5) {
+                        System.out.printf(Locale.ROOT, "  missed (%.3f, %.3f) -> (%.3f, %.3f), side (%.3f, %.3f)%n",
+                                ax, ay, bx, by, sx, sy);
+                    }
+                }
+            } else {
+                unseen++;
+                if (!visible) culled++;
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-28s build %5d ms, cell %d, %d seen pairs, %d missed; culls %.1f%% of %d unseen%n",
+                name, buildMs, pvs.cellSize(), seen, missed, unseen == 0 ? 0 : 100.0 * culled / unseen, unseen);
+        return missed == 0;
+    }
+}